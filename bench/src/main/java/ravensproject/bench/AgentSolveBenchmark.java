@@ -0,0 +1,62 @@
+package ravensproject.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ravensproject.Agent;
+import ravensproject.RavensProblem;
+
+/**
+ * Times Agent.Solve on verbal 2x2 and 3x3 problems. The relationship cache
+ * is cleared before every call so each solve does the full work, as it
+ * would the first time it sees a problem.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AgentSolveBenchmark {
+
+    @Param({"2x2", "3x3"})
+    public String problemType;
+
+    @Param({"1", "3", "5"})
+    public int objects;
+
+    @Param({"full", "relational"})
+    public String mix;
+
+    private Agent agent;
+    private RavensProblem problem;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        agent = new Agent();
+        problem = new Fixtures(17L * objects + problemType.hashCode(), mix)
+                .problem(problemType, "Bench Problem " + problemType, objects);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        agent.getRelationshipCache().clear();
+    }
+
+    @Benchmark
+    public int solve() {
+        return agent.Solve(problem);
+    }
+}
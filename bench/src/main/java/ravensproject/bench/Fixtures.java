@@ -0,0 +1,276 @@
+package ravensproject.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ravensproject.RavensFigure;
+import ravensproject.RavensObject;
+import ravensproject.RavensProblem;
+
+/**
+ * Builds figures and problems in code for the benchmarks. Every fixture is
+ * derived from a seed, so two runs benchmark exactly the same inputs.
+ *
+ * The attribute mix decides how much each object carries:
+ * "shape" gives shape and size only, "full" adds fill, angle and alignment,
+ * and "relational" adds inside/above/left-of references between objects.
+ * Figure images are drawn from the same seed and ignore the mix.
+ */
+public class Fixtures {
+
+    public static final String SET_NAME = "Bench";
+
+    private static final String[] SHAPES = {"circle", "square", "triangle", "pentagon", "diamond",
+            "heart", "octagon", "rectangle", "star", "plus", "pac-man"};
+    private static final String[] SIZES = {"very small", "small", "medium", "large", "very large", "huge"};
+    private static final String[] FILLS = {"yes", "no", "left-half", "right-half", "top-half", "bottom-half"};
+    private static final String[] ALIGNMENTS = {"bottom-left", "bottom-right", "top-left", "top-right"};
+    private static final String[] ANGLES = {"0", "45", "90", "135", "180", "225", "270", "315"};
+
+    private Random random;
+    private String mix;
+    private int nextObject;
+
+    public Fixtures(long seed, String mix) {
+        this.random = new Random(seed);
+        this.mix = mix;
+    }
+
+    /**
+     * This method builds a figure of random objects.
+     *
+     * @param name
+     * @param problemName
+     * @param objects the number of objects
+     * @return The figure
+     */
+    public RavensFigure figure(String name, String problemName, int objects) {
+        RavensFigure figure = new RavensFigure(name, problemName, SET_NAME);
+        List<RavensObject> created = new ArrayList<>();
+        for (int i = 0; i < objects; i++) {
+            RavensObject object = new RavensObject(nextObjectName());
+            Map<String, String> attributes = object.getAttributes();
+            attributes.put("shape", pick(SHAPES));
+            attributes.put("size", pick(SIZES));
+            if (!mix.equals("shape")) {
+                attributes.put("fill", pick(FILLS));
+                attributes.put("angle", pick(ANGLES));
+                attributes.put("alignment", pick(ALIGNMENTS));
+            }
+            created.add(object);
+            figure.getObjects().put(object.getName(), object);
+        }
+        if (mix.equals("relational"))
+            relate(created);
+        return figure;
+    }
+
+    /**
+     * This method builds a figure whose objects are those of the source
+     * figure, in the same order, each with one attribute changed by the same
+     * rule, so the figure continues a row the way the source figure does.
+     *
+     * @param name
+     * @param problemName
+     * @param source
+     * @param rule the attribute the rule changes
+     * @param step how far along its value list the attribute moves
+     * @return The figure
+     */
+    public RavensFigure transform(String name, String problemName, RavensFigure source, String rule, int step) {
+        RavensFigure figure = new RavensFigure(name, problemName, SET_NAME);
+        List<RavensObject> created = new ArrayList<>();
+        for (RavensObject sourceObject : source.getObjects().values()) {
+            RavensObject object = new RavensObject(nextObjectName());
+            for (Map.Entry<String, String> attribute : sourceObject.getAttributes().entrySet())
+                if (!isRelation(attribute.getKey()))
+                    object.getAttributes().put(attribute.getKey(), attribute.getValue());
+            String[] values = values(rule);
+            String value = object.getAttributes().get(rule);
+            if (value != null)
+                object.getAttributes().put(rule, values[(indexOf(values, value) + step) % values.length]);
+            created.add(object);
+            figure.getObjects().put(object.getName(), object);
+        }
+        if (mix.equals("relational"))
+            relate(created);
+        return figure;
+    }
+
+    /**
+     * This method builds a verbal problem whose rows all apply the same
+     * attribute change. Answer 1 continues the last row correctly; the other
+     * answers apply a different change or are random figures.
+     *
+     * @param problemType "2x2" or "3x3"
+     * @param name
+     * @param objects the number of objects in each figure
+     * @return The problem
+     */
+    public RavensProblem problem(String problemType, String name, int objects) {
+        boolean large = problemType.equals("3x3");
+        int size = large ? 3 : 2;
+        int answers = large ? 8 : 6;
+        String rule = mix.equals("shape") ? "size" : "fill";
+
+        RavensProblem problem = new RavensProblem(name, problemType, 1, false, true);
+        Map<String, RavensFigure> figures = problem.getFigures();
+        char figureName = 'A';
+        RavensFigure lastRowStart = null;
+        for (int row = 0; row < size; row++) {
+            RavensFigure first = figure(String.valueOf(figureName++), name, objects);
+            figures.put(first.getName(), first);
+            lastRowStart = first;
+            RavensFigure previous = first;
+            for (int col = 1; col < size; col++) {
+                if (row == size - 1 && col == size - 1)
+                    break;
+                RavensFigure next = transform(String.valueOf(figureName++), name, previous, rule, 1);
+                figures.put(next.getName(), next);
+                previous = next;
+            }
+        }
+
+        RavensFigure beforeAnswer = lastRowStart;
+        for (int col = 1; col < size - 1; col++)
+            beforeAnswer = figures.get(String.valueOf((char) (lastRowStart.getName().charAt(0) + col)));
+
+        for (int answer = 1; answer <= answers; answer++) {
+            String answerName = String.valueOf(answer);
+            RavensFigure figure;
+            if (answer == 1)
+                figure = transform(answerName, name, beforeAnswer, rule, 1);
+            else if (answer % 2 == 0)
+                figure = transform(answerName, name, beforeAnswer, rule, 1 + answer);
+            else
+                figure = figure(answerName, name, objects);
+            figures.put(answerName, figure);
+        }
+        return problem;
+    }
+
+    /**
+     * This method draws a figure image of a few random filled and outlined
+     * shapes in black on white.
+     *
+     * @param size the width and height in pixels
+     * @param imageType a BufferedImage type, such as BufferedImage.TYPE_INT_ARGB
+     * @return The image
+     */
+    public BufferedImage figureImage(int size, int imageType) {
+        BufferedImage image = new BufferedImage(size, size, imageType);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, size, size);
+        graphics.setColor(Color.BLACK);
+        int shapes = 1 + random.nextInt(4);
+        for (int s = 0; s < shapes; s++) {
+            int w = size / 8 + random.nextInt(size / 2);
+            int h = size / 8 + random.nextInt(size / 2);
+            int x = random.nextInt(size - w);
+            int y = random.nextInt(size - h);
+            switch (random.nextInt(4)) {
+                case 0:
+                    graphics.fillOval(x, y, w, h);
+                    break;
+                case 1:
+                    graphics.drawOval(x, y, w, h);
+                    break;
+                case 2:
+                    graphics.fillRect(x, y, w, h);
+                    break;
+                default:
+                    graphics.drawRect(x, y, w, h);
+            }
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    /**
+     * This method writes a problem in the ProblemData.txt format.
+     *
+     * @param problem
+     * @param correctAnswer
+     * @return The contents of the problem's ProblemData.txt
+     */
+    public static String toProblemData(RavensProblem problem, int correctAnswer) {
+        StringBuilder data = new StringBuilder();
+        data.append(problem.getProblemType()).append('\n');
+        data.append(correctAnswer).append('\n');
+        data.append(problem.hasVisual()).append('\n');
+        data.append(problem.hasVerbal()).append('\n');
+        for (RavensFigure figure : problem.getFigures().values()) {
+            data.append(figure.getName()).append('\n');
+            for (RavensObject object : figure.getObjects().values()) {
+                data.append('\t').append(object.getName()).append('\n');
+                for (Map.Entry<String, String> attribute : object.getAttributes().entrySet())
+                    data.append("\t\t").append(attribute.getKey()).append(':').append(attribute.getValue()).append('\n');
+            }
+        }
+        return data.toString();
+    }
+
+    private void relate(List<RavensObject> objects) {
+        String[] relations = {"inside", "above", "left-of"};
+        for (int i = 1; i < objects.size(); i++) {
+            String relation = relations[random.nextInt(relations.length)];
+            StringBuilder targets = new StringBuilder();
+            for (int j = 0; j < i; j++) {
+                if (j == 0 || random.nextBoolean()) {
+                    if (targets.length() > 0)
+                        targets.append(',');
+                    targets.append(objects.get(j).getName());
+                }
+            }
+            objects.get(i).getAttributes().put(relation, targets.toString());
+        }
+    }
+
+    private static boolean isRelation(String attribute) {
+        return attribute.equals("inside") || attribute.equals("above") || attribute.equals("left-of")
+                || attribute.equals("overlaps");
+    }
+
+    private static String[] values(String attribute) {
+        switch (attribute) {
+            case "shape":
+                return SHAPES;
+            case "size":
+                return SIZES;
+            case "fill":
+                return FILLS;
+            case "angle":
+                return ANGLES;
+            default:
+                return ALIGNMENTS;
+        }
+    }
+
+    private static int indexOf(String[] values, String value) {
+        for (int i = 0; i < values.length; i++)
+            if (values[i].equals(value))
+                return i;
+        return 0;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String nextObjectName() {
+        // a..z, then aa, ab, ... like the problem files
+        int n = nextObject++;
+        StringBuilder name = new StringBuilder();
+        do {
+            name.insert(0, (char) ('a' + n % 26));
+            n = n / 26 - 1;
+        } while (n >= 0);
+        return name.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package ravensproject.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ravensproject.Generator;
+import ravensproject.Permutations;
+
+/**
+ * Times Generator.generatePermutations, which builds every permutation up
+ * front, against walking the lazy Permutations over the same list. Half of
+ * each list is null padding, as in SemanticNetwork, so the lazy walk only
+ * visits the distinct arrangements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GeneratorBenchmark {
+
+    @Param({"2", "4", "6", "8"})
+    public int size;
+
+    private Generator<String> generator;
+    private List<String> list;
+
+    @Setup
+    public void setUp() {
+        generator = new Generator<>();
+        list = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+            list.add(i < (size + 1) / 2 ? String.valueOf((char) ('a' + i)) : null);
+    }
+
+    @Benchmark
+    public List<List<String>> generatePermutations() {
+        return generator.generatePermutations(list);
+    }
+
+    @Benchmark
+    public void permutations(Blackhole blackhole) {
+        Permutations<String> permutations = generator.permutations(list);
+        while (permutations.next())
+            blackhole.consume(permutations.get(0));
+    }
+}
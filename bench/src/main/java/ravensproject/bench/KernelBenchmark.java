@@ -0,0 +1,177 @@
+package ravensproject.bench;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ravensproject.FigureBitmap;
+import ravensproject.ScalarKernels;
+import ravensproject.SimilarityKernels;
+
+/**
+ * Times each similarity kernel on neighbouring pairs of fixture figures at
+ * the standard 184x184 resolution. "scalar" is ScalarKernels and "selected"
+ * is whatever SimilarityKernels.get() picks, which is VectorKernels only when
+ * benchmarks.jar is started with --add-modules jdk.incubator.vector (the
+ * forks inherit it); otherwise both are scalar. Setup checks that the
+ * selected kernels agree with the scalar ones before anything is timed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KernelBenchmark {
+
+    private static final int FIGURES = 16;
+
+    @Param({"scalar", "selected"})
+    public String kernels;
+
+    @Param({"184"})
+    public int size;
+
+    private SimilarityKernels implementation;
+    private long[][] words;
+    private byte[][] pixels;
+    private float[] weights;
+    private int[] profile;
+
+    @Setup
+    public void setUp() {
+        Fixtures fixtures = new Fixtures(42, "shape");
+        words = new long[FIGURES][];
+        pixels = new byte[FIGURES][];
+        for (int i = 0; i < FIGURES; i++) {
+            BufferedImage image = fixtures.figureImage(size, BufferedImage.TYPE_INT_RGB);
+            FigureBitmap bitmap = FigureBitmap.fromImage(image, FigureBitmap.DEFAULT_THRESHOLD);
+            words[i] = bitmap.getWords();
+            pixels[i] = bitmap.toPixels();
+        }
+
+        // Weigh the centre of the figure more than its border
+        weights = new float[size * size];
+        for (int y = 0; y < size; y++)
+            for (int x = 0; x < size; x++)
+                weights[y * size + x] = 1.0f - (Math.abs(x - size / 2) + Math.abs(y - size / 2)) / (float) size;
+        profile = new int[size];
+
+        SimilarityKernels scalar = new ScalarKernels();
+        implementation = kernels.equals("scalar") ? scalar : SimilarityKernels.get();
+        check(scalar, implementation);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void xorCount(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++)
+            blackhole.consume(implementation.xorCount(words[i], words[next(i)]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void andCount(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++)
+            blackhole.consume(implementation.andCount(words[i], words[next(i)]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void orCount(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++)
+            blackhole.consume(implementation.orCount(words[i], words[next(i)]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void andNotCount(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++)
+            blackhole.consume(implementation.andNotCount(words[i], words[next(i)]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void absDifference(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++)
+            blackhole.consume(implementation.absDifference(pixels[i], pixels[next(i)]));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void weightedOverlap(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++)
+            blackhole.consume(implementation.weightedOverlap(pixels[i], pixels[next(i)], weights));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void rowProfile(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++) {
+            implementation.rowProfile(pixels[i], size, size, profile);
+            blackhole.consume(profile);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FIGURES)
+    public void columnProfile(Blackhole blackhole) {
+        for (int i = 0; i < FIGURES; i++) {
+            implementation.columnProfile(pixels[i], size, size, profile);
+            blackhole.consume(profile);
+        }
+    }
+
+    private static int next(int i) {
+        return (i + 1) % FIGURES;
+    }
+
+    /**
+     * This method makes sure the kernels give the same answers as the
+     * reference before they are timed.
+     *
+     * @param expected
+     * @param actual
+     */
+    private void check(SimilarityKernels expected, SimilarityKernels actual) {
+        int[] expectedProfile = new int[size];
+        int[] actualProfile = new int[size];
+        for (int i = 0; i < FIGURES; i++) {
+            int j = next(i);
+            boolean same = expected.xorCount(words[i], words[j]) == actual.xorCount(words[i], words[j])
+                    && expected.andCount(words[i], words[j]) == actual.andCount(words[i], words[j])
+                    && expected.orCount(words[i], words[j]) == actual.orCount(words[i], words[j])
+                    && expected.andNotCount(words[i], words[j]) == actual.andNotCount(words[i], words[j])
+                    && expected.absDifference(pixels[i], pixels[j]) == actual.absDifference(pixels[i], pixels[j]);
+
+            double e = expected.weightedOverlap(pixels[i], pixels[j], weights);
+            double a = actual.weightedOverlap(pixels[i], pixels[j], weights);
+            same &= Math.abs(e - a) <= 1e-4 * Math.max(1.0, Math.abs(e));
+
+            expected.rowProfile(pixels[i], size, size, expectedProfile);
+            actual.rowProfile(pixels[i], size, size, actualProfile);
+            same &= Arrays.equals(expectedProfile, actualProfile);
+            expected.columnProfile(pixels[i], size, size, expectedProfile);
+            actual.columnProfile(pixels[i], size, size, actualProfile);
+            same &= Arrays.equals(expectedProfile, actualProfile);
+
+            if (!same)
+                throw new IllegalStateException(actual.getName() + " disagrees with " + expected.getName()
+                        + " on figures " + i + " and " + j);
+        }
+    }
+}
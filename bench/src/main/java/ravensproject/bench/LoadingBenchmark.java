@@ -0,0 +1,135 @@
+package ravensproject.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ravensproject.ProblemDataParser;
+import ravensproject.RavensFigure;
+import ravensproject.RavensObject;
+import ravensproject.RavensProblem;
+
+/**
+ * Measures problem loading throughput, in problems per second, over a set of
+ * fixture ProblemData.txt files written to a temporary directory.
+ *
+ * ProblemSet's Scanner loader always reads Problems/ relative to the working
+ * directory, which a benchmark cannot point at its fixtures. parseProblems
+ * times ProblemDataParser, the loader the agent's drivers use, and
+ * scanProblems replays ProblemSet's Scanner loop on the same files as the
+ * baseline it replaced.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoadingBenchmark {
+
+    private static final int PROBLEMS = 64;
+
+    private Path directory;
+    private File[] files;
+    private ProblemDataParser parser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ravens-bench");
+        files = new File[PROBLEMS];
+        for (int i = 0; i < PROBLEMS; i++) {
+            Fixtures fixtures = new Fixtures(i, i % 2 == 0 ? "full" : "relational");
+            String problemType = i % 3 == 0 ? "3x3" : "2x2";
+            RavensProblem problem = fixtures.problem(problemType, "Bench Problem " + i, 1 + i % 6);
+            Path problemDirectory = Files.createDirectories(directory.resolve(problem.getName()));
+            Path file = problemDirectory.resolve("ProblemData.txt");
+            Files.write(file, Fixtures.toProblemData(problem, 1).getBytes(StandardCharsets.UTF_8));
+            files[i] = file.toFile();
+        }
+        parser = new ProblemDataParser();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBLEMS)
+    public void parseProblems(Blackhole blackhole) throws IOException {
+        for (File file : files)
+            blackhole.consume(parser.parse(file, Fixtures.SET_NAME, file.getParentFile().getName()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBLEMS)
+    public void scanProblems(Blackhole blackhole) throws IOException {
+        for (File file : files)
+            blackhole.consume(scan(file, Fixtures.SET_NAME, file.getParentFile().getName()));
+    }
+
+    /**
+     * This method loads a verbal problem the way ProblemSet.loadProblem does,
+     * a Scanner line at a time with replace and split.
+     *
+     * @param file
+     * @param setName
+     * @param problemName
+     * @return The problem
+     */
+    private static RavensProblem scan(File file, String setName, String problemName) throws IOException {
+        try (Scanner r = new Scanner(file)) {
+            String problemType = r.nextLine();
+            int correctAnswer = Integer.parseInt(r.nextLine());
+            boolean hasVisual = Boolean.parseBoolean(r.nextLine());
+            boolean hasVerbal = Boolean.parseBoolean(r.nextLine());
+
+            RavensProblem problem = new RavensProblem(problemName, problemType, correctAnswer, hasVisual, hasVerbal);
+            Map<String, RavensFigure> figures = new HashMap<>();
+            RavensFigure currentFigure = null;
+            RavensObject currentObject = null;
+            while (r.hasNext()) {
+                String line = r.nextLine();
+                if (!line.startsWith("\t")) {
+                    currentFigure = new RavensFigure(line, problemName, setName);
+                    figures.put(line, currentFigure);
+                } else if (!line.startsWith("\t\t")) {
+                    line = line.replace("\t", "");
+                    currentObject = new RavensObject(line);
+                    currentFigure.getObjects().put(line, currentObject);
+                } else {
+                    line = line.replace("\t", "");
+                    String[] split = line.split(":");
+                    currentObject.getAttributes().put(split[0], split[1]);
+                }
+            }
+            problem.getFigures().putAll(figures);
+            return problem;
+        }
+    }
+}
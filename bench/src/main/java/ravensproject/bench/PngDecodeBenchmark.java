@@ -0,0 +1,111 @@
+package ravensproject.bench;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ravensproject.FigureBitmap;
+import ravensproject.PngBitmapDecoder;
+
+/**
+ * Measures figure PNG decoding throughput, in images per second, for
+ * PngBitmapDecoder against the ImageIO path it replaced. The images are
+ * 184x184 fixture figures written to a temporary directory in each of the
+ * colour types ImageIO produces; setup checks that both paths give the same
+ * bitmaps before anything is timed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PngDecodeBenchmark {
+
+    private static final int IMAGES = 32;
+    private static final int SIZE = 184;
+
+    @Param({"rgba", "rgb", "gray", "palette"})
+    public String colorType;
+
+    private Path directory;
+    private String[] files;
+    private PngBitmapDecoder decoder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("ravens-bench");
+        Fixtures fixtures = new Fixtures(13, "shape");
+        files = new String[IMAGES];
+        for (int i = 0; i < IMAGES; i++) {
+            BufferedImage image = fixtures.figureImage(SIZE, imageType());
+            File file = directory.resolve("figure" + i + ".png").toFile();
+            ImageIO.write(image, "png", file);
+            files[i] = file.getPath();
+        }
+
+        decoder = new PngBitmapDecoder();
+        for (String file : files) {
+            FigureBitmap bitmap = decoder.decode(file, FigureBitmap.DEFAULT_THRESHOLD);
+            if (bitmap == null || bitmap.xorCount(FigureBitmap.loadWithImageIO(file)) != 0)
+                throw new IllegalStateException("PngBitmapDecoder disagrees with ImageIO on " + file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMAGES)
+    public void pngBitmapDecoder(Blackhole blackhole) throws IOException {
+        for (String file : files)
+            blackhole.consume(decoder.decode(file, FigureBitmap.DEFAULT_THRESHOLD));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(IMAGES)
+    public void imageIO(Blackhole blackhole) throws IOException {
+        for (String file : files)
+            blackhole.consume(FigureBitmap.loadWithImageIO(file));
+    }
+
+    private int imageType() {
+        switch (colorType) {
+            case "rgba":
+                return BufferedImage.TYPE_INT_ARGB;
+            case "rgb":
+                return BufferedImage.TYPE_INT_RGB;
+            case "gray":
+                return BufferedImage.TYPE_BYTE_GRAY;
+            default:
+                return BufferedImage.TYPE_BYTE_BINARY;
+        }
+    }
+}
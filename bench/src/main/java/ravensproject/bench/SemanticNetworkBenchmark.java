@@ -0,0 +1,73 @@
+package ravensproject.bench;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ravensproject.CompiledFigure;
+import ravensproject.Generator;
+import ravensproject.MatchMode;
+import ravensproject.RavensFigure;
+import ravensproject.SemanticNetwork;
+
+/**
+ * Times SemanticNetwork.formRelationships between two random figures, by
+ * object count, attribute mix and matching strategy. The "compiled" variant
+ * starts from figures already compiled to packed attribute codes, the way
+ * the Agent calls it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SemanticNetworkBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8", "9"})
+    public int objects;
+
+    @Param({"shape", "full", "relational"})
+    public String mix;
+
+    @Param({"ASSIGNMENT", "BRANCH_AND_BOUND", "EXHAUSTIVE"})
+    public MatchMode matchMode;
+
+    private SemanticNetwork network;
+    private RavensFigure figure1;
+    private RavensFigure figure2;
+    private CompiledFigure compiled1;
+    private CompiledFigure compiled2;
+
+    @Setup
+    public void setUp() {
+        Fixtures fixtures = new Fixtures(31L * objects + mix.hashCode(), mix);
+        figure1 = fixtures.figure("A", "Bench Problem", objects);
+        figure2 = fixtures.figure("B", "Bench Problem", objects);
+        compiled1 = new CompiledFigure(figure1);
+        compiled2 = new CompiledFigure(figure2);
+        network = new SemanticNetwork(new Generator<>(), matchMode);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> formRelationships() {
+        return network.formRelationships(figure1, figure2);
+    }
+
+    @Benchmark
+    public Map<String, List<String>> formRelationshipsCompiled() {
+        return network.formRelationships(compiled1, compiled2);
+    }
+}
@@ -0,0 +1,252 @@
+package ravensproject;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The similarity kernels written with the jdk.incubator.vector API, using the
+ * widest long vectors the CPU supports. Compile and run with
+ * --add-modules jdk.incubator.vector, after the main sources:
+ *
+ *     javac -d out src/ravensproject/*.java
+ *     javac --add-modules jdk.incubator.vector -cp out -d out src-vector/ravensproject/*.java
+ *     java --add-modules jdk.incubator.vector -cp out ravensproject.RavensProject
+ *
+ * SimilarityKernels.get() falls back to ScalarKernels when this class or the
+ * module is missing. bench/pom.xml compiles it into the JMH jar as well, and
+ * KernelBenchmark there compares it with ScalarKernels:
+ *
+ *     java --add-modules jdk.incubator.vector -jar bench/target/benchmarks.jar Kernel
+ *
+ * JDK 17 has no lane-wise bit count, so the kernels count bits with the SWAR
+ * method: every byte of every lane holds its own count, those byte counts are
+ * summed for up to 31 vectors (31 * 8 still fits a byte) and only then folded
+ * into a total.
+ *
+ * The byte-per-pixel kernels load a full byte vector of the same shape and
+ * widen it to int lanes in four parts, so every species here is sized from
+ * LONGS and the kernels also work with 128-bit vectors.
+ */
+public class VectorKernels implements SimilarityKernels {
+
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = VectorSpecies.of(byte.class, LONGS.vectorShape());
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, LONGS.vectorShape());
+    private static final VectorSpecies<Float> FLOATS = VectorSpecies.of(float.class, LONGS.vectorShape());
+
+    // A byte vector widens into this many int vectors
+    private static final int PARTS = Integer.SIZE / Byte.SIZE;
+
+    private static final int XOR = 0;
+    private static final int AND = 1;
+    private static final int OR = 2;
+    private static final int AND_NOT = 3;
+
+    private static final int BYTE_COUNT_FLUSH = 31;
+
+    // Each byte vector adds up to PARTS * 255 to an int lane, so flush well before 2^31
+    private static final int INT_SUM_FLUSH = 1 << 20;
+
+    private static final long M1 = 0x5555555555555555L;
+    private static final long M2 = 0x3333333333333333L;
+    private static final long M4 = 0x0F0F0F0F0F0F0F0FL;
+    private static final long M8 = 0x00FF00FF00FF00FFL;
+
+    @Override
+    public String getName() {
+        return "vector (" + LONGS.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public int xorCount(long[] a, long[] b) {
+        return count(a, b, XOR);
+    }
+
+    @Override
+    public int andCount(long[] a, long[] b) {
+        return count(a, b, AND);
+    }
+
+    @Override
+    public int orCount(long[] a, long[] b) {
+        return count(a, b, OR);
+    }
+
+    @Override
+    public int andNotCount(long[] a, long[] b) {
+        return count(a, b, AND_NOT);
+    }
+
+    /**
+     * This method counts the bits set in a combined with b.
+     *
+     * @param a
+     * @param b
+     * @param op XOR, AND, OR or AND_NOT
+     * @return The number of bits set
+     */
+    private int count(long[] a, long[] b, int op) {
+        int upper = LONGS.loopBound(a.length);
+        int count = 0;
+        int i = 0;
+        while (i < upper) {
+            LongVector byteCounts = LongVector.zero(LONGS);
+            for (int n = 0; n < BYTE_COUNT_FLUSH && i < upper; n++, i += LONGS.length()) {
+                LongVector va = LongVector.fromArray(LONGS, a, i);
+                LongVector vb = LongVector.fromArray(LONGS, b, i);
+                byteCounts = byteCounts.add(byteBitCounts(combine(va, vb, op)));
+            }
+            count += (int) fold(byteCounts).reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < a.length; i++) {
+            long word;
+            switch (op) {
+                case XOR:
+                    word = a[i] ^ b[i];
+                    break;
+                case AND:
+                    word = a[i] & b[i];
+                    break;
+                case OR:
+                    word = a[i] | b[i];
+                    break;
+                default:
+                    word = a[i] & ~b[i];
+            }
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    private static LongVector combine(LongVector a, LongVector b, int op) {
+        switch (op) {
+            case XOR:
+                return a.lanewise(VectorOperators.XOR, b);
+            case AND:
+                return a.lanewise(VectorOperators.AND, b);
+            case OR:
+                return a.lanewise(VectorOperators.OR, b);
+            default:
+                return a.lanewise(VectorOperators.AND_NOT, b);
+        }
+    }
+
+    /**
+     * @param v
+     * @return The number of bits set in each byte of each lane, one count per byte
+     */
+    private static LongVector byteBitCounts(LongVector v) {
+        v = v.sub(v.lanewise(VectorOperators.LSHR, 1).and(M1));
+        v = v.and(M2).add(v.lanewise(VectorOperators.LSHR, 2).and(M2));
+        return v.add(v.lanewise(VectorOperators.LSHR, 4)).and(M4);
+    }
+
+    /**
+     * @param byteCounts per-byte counts of at most 255 each
+     * @return The sum of the byte counts of each lane
+     */
+    private static LongVector fold(LongVector byteCounts) {
+        LongVector v = byteCounts.and(M8).add(byteCounts.lanewise(VectorOperators.LSHR, 8).and(M8));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 16));
+        v = v.add(v.lanewise(VectorOperators.LSHR, 32));
+        return v.and(0xFFFF);
+    }
+
+    /**
+     * @param pixels a byte vector of darkness
+     * @param part which quarter of the lanes to widen, from 0 to PARTS - 1
+     * @return The unsigned darkness of INTS.length() pixels, one per int lane
+     */
+    private static IntVector widen(ByteVector pixels, int part) {
+        return (IntVector) pixels.convertShape(VectorOperators.B2I, INTS, part)
+                .lanewise(VectorOperators.AND, 0xFF);
+    }
+
+    @Override
+    public long absDifference(byte[] a, byte[] b) {
+        int upper = BYTES.loopBound(a.length);
+        long sum = 0;
+        int i = 0;
+        while (i < upper) {
+            IntVector sums = IntVector.zero(INTS);
+            for (int n = 0; n < INT_SUM_FLUSH && i < upper; n++, i += BYTES.length()) {
+                ByteVector va = ByteVector.fromArray(BYTES, a, i);
+                ByteVector vb = ByteVector.fromArray(BYTES, b, i);
+                for (int part = 0; part < PARTS; part++)
+                    sums = sums.add(widen(va, part).sub(widen(vb, part)).abs());
+            }
+            sum += sums.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < a.length; i++)
+            sum += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+        return sum;
+    }
+
+    @Override
+    public double weightedOverlap(byte[] a, byte[] b, float[] weights) {
+        int upper = BYTES.loopBound(a.length);
+        FloatVector sums = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < upper; i += BYTES.length()) {
+            ByteVector va = ByteVector.fromArray(BYTES, a, i);
+            ByteVector vb = ByteVector.fromArray(BYTES, b, i);
+            for (int part = 0; part < PARTS; part++) {
+                FloatVector common = (FloatVector) widen(va, part).min(widen(vb, part))
+                        .convert(VectorOperators.I2F, 0);
+                FloatVector weight = FloatVector.fromArray(FLOATS, weights, i + part * FLOATS.length());
+                sums = common.fma(weight, sums);
+            }
+        }
+        float sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++)
+            sum += weights[i] * Math.min(a[i] & 0xFF, b[i] & 0xFF);
+        return sum / 255.0;
+    }
+
+    @Override
+    public void rowProfile(byte[] pixels, int width, int height, int[] profile) {
+        int upper = BYTES.loopBound(width);
+        for (int y = 0; y < height; y++) {
+            int start = y * width;
+            IntVector sums = IntVector.zero(INTS);
+            int x = 0;
+            for (; x < upper; x += BYTES.length()) {
+                ByteVector v = ByteVector.fromArray(BYTES, pixels, start + x);
+                for (int part = 0; part < PARTS; part++)
+                    sums = sums.add(widen(v, part));
+            }
+            int sum = sums.reduceLanes(VectorOperators.ADD);
+            for (; x < width; x++)
+                sum += pixels[start + x] & 0xFF;
+            profile[y] = sum;
+        }
+    }
+
+    @Override
+    public void columnProfile(byte[] pixels, int width, int height, int[] profile) {
+        int upper = BYTES.loopBound(width);
+        IntVector[] sums = new IntVector[PARTS];
+        int x = 0;
+        for (; x < upper; x += BYTES.length()) {
+            for (int part = 0; part < PARTS; part++)
+                sums[part] = IntVector.zero(INTS);
+            for (int y = 0, start = x; y < height; y++, start += width) {
+                ByteVector v = ByteVector.fromArray(BYTES, pixels, start);
+                for (int part = 0; part < PARTS; part++)
+                    sums[part] = sums[part].add(widen(v, part));
+            }
+            for (int part = 0; part < PARTS; part++)
+                sums[part].intoArray(profile, x + part * INTS.length());
+        }
+        for (; x < width; x++) {
+            int sum = 0;
+            for (int y = 0, i = x; y < height; y++, i += width)
+                sum += pixels[i] & 0xFF;
+            profile[x] = sum;
+        }
+    }
+}
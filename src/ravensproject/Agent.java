@@ -5,7 +5,10 @@ package ravensproject;
 //import java.io.File;
 //import javax.imageio.ImageIO;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
 
 /**
  * Your Agent for solving Raven's Progressive Matrices. You MUST modify this
@@ -24,6 +27,24 @@ public class Agent {
 
     private Generator generator;
     private Random random;
+    private long seed;
+    private MatchMode matchMode;
+    private long nodeBudget;
+    private long timeBudgetNanos;
+    private RelationshipCache relationshipCache;
+    private Map<RavensFigure, CompiledFigure> compiledFigures;
+    private boolean parallelSolve;
+    private ForkJoinPool solvePool;
+    private VisualEngine visualEngine;
+    private SolveMetrics.Recording metrics;
+    private long problemBudgetNanos;
+    private long problemGraceNanos;
+    private Deadline deadline;
+    private boolean timedOut;
+    private List<CandidateFilter> candidateFilters;
+    private List<String> filteredCandidates;
+    private CorrespondenceStore correspondenceStore;
+    private boolean preserveRelations;
 
     /**
      * The default constructor for your Agent. Make sure to execute any
@@ -35,7 +56,24 @@ public class Agent {
      */
     public Agent() {
         generator = new Generator();
-        random = new Random();
+        seed = Long.getLong("ravens.seed", 0L);
+        random = new Random(seed);
+        matchMode = MatchMode.valueOf(System.getProperty("ravens.matchMode", MatchMode.ASSIGNMENT.name()));
+        nodeBudget = Long.getLong("ravens.nodeBudget", Long.MAX_VALUE);
+        timeBudgetNanos = Long.getLong("ravens.timeBudgetMs", 0L) * 1000000L;
+        relationshipCache = new RelationshipCache(Integer.getInteger("ravens.relationshipCacheSize", 256));
+        compiledFigures = new IdentityHashMap<>();
+        int solveParallelism = Integer.getInteger("ravens.solveParallelism", 0);
+        setParallelSolve(Boolean.getBoolean("ravens.parallelSolve"), solveParallelism);
+        visualEngine = new VisualEngine();
+        metrics = SolveMetrics.disabled();
+        problemBudgetNanos = Long.getLong("ravens.problemBudgetMs", 0L) * 1000000L;
+        problemGraceNanos = Long.getLong("ravens.problemGraceMs", problemBudgetNanos / 4000000L) * 1000000L;
+        deadline = Deadline.NONE;
+        candidateFilters = CandidateFilter.parse(System.getProperty("ravens.candidateFilters", ""));
+        filteredCandidates = new ArrayList<>();
+        correspondenceStore = CorrespondenceStore.shared();
+        preserveRelations = Boolean.getBoolean("ravens.preserveRelations");
     }
     /**
      * The primary method for solving incoming Raven's Progressive Matrices.
@@ -63,7 +101,35 @@ public class Agent {
      * @return your Agent's answer to this problem
      */
     public int Solve(RavensProblem problem) {
-        System.out.println("Solving "+problem.getName());
+        metrics = SolveMetrics.begin(problem.getProblemType());
+        deadline = problemBudgetNanos > 0 ? new Deadline(problemBudgetNanos, problemGraceNanos) : Deadline.NONE;
+        filteredCandidates = new ArrayList<>();
+        long start = metrics.start();
+        try {
+            return solve(problem);
+        } finally {
+            metrics.stop(SolveMetrics.Stage.TOTAL, start);
+            SolveMetrics.finish(metrics);
+            timedOut = deadline.isExpired();
+            if (timedOut)
+                Log.info(() -> problem.getName() + " ran out of its time budget");
+        }
+    }
+
+    /**
+     * This method does the work of Solve, recording the time of each stage
+     * into the current solve's metrics.
+     *
+     * @param problem
+     * @return The answer, or -1 to skip
+     */
+    private int solve(RavensProblem problem) {
+        Log.debug(() -> "Solving " + problem.getName());
+
+        // Seed guesses per problem so results do not depend on solving order
+        random.setSeed(seed ^ problem.getName().hashCode());
+
+        long stageStart = metrics.start();
 
         // Get row and col size
         int row = Character.getNumericValue(problem.getProblemType().charAt(0));
@@ -72,6 +138,9 @@ public class Agent {
         // Retrieve figures from problem
         Map<String, RavensFigure> figureMap = problem.getFigures();
 
+        // Compile every figure's attributes once up front
+        compileFigures(figureMap);
+
         // Get list of figure names for problem
         List<String> figureKeyListLR = createKeyList(figureMap, "[A-Z]");
 
@@ -83,18 +152,27 @@ public class Agent {
                 new ArrayList<>(getRavensMatrix(figureMap, figureKeyListLR, row, col));
         List<List<RavensFigure>> ravensFiguresListUD =
                 new ArrayList<>(generateUpDownMatrix(ravensFiguresListLR));
+        metrics.stop(SolveMetrics.Stage.MATRIX, stageStart);
+
+        // Problems without a verbal representation are solved from their images
+        if (!problem.hasVerbal() && problem.hasVisual())
+            return solveVisual(figureMap, ravensFiguresListLR, ravensFiguresListUD, solutionKeyList);
+
+        // Drop the candidates the cheap filters rule out before matching the rest
+        solutionKeyList = filterCandidates(figureMap, solutionKeyList, ravensFiguresListLR, ravensFiguresListUD);
 
-        // Todo - find a way to move this to a method without forgetting about lastRavensFigure
+        // Relationships are matched through fork(), which runs them on the solve pool in
+        // parallel mode. The lists keep their order, so results merge deterministically.
         // Determine left-right relationships between objects in figures
-        List<List<Relationship>> probRelationshipsListLR = new ArrayList<>(); //list of lists of relationships
+        List<List<Future<Relationship>>> probRelationshipsListLR = new ArrayList<>(); //list of lists of relationships
         RavensFigure lastRavensFigureLR = null;
         for (List<RavensFigure> figureList : ravensFiguresListLR) {
-            List<Relationship> tempRelationshipList = new ArrayList<>();
+            List<Future<Relationship>> tempRelationshipList = new ArrayList<>();
             for (int i = 0; i < figureList.size() - 1; i++) {
                 if (figureList.get(i+1) != null) {
                     RavensFigure rFig1 = figureList.get(i);
                     RavensFigure rFig2 = figureList.get(i+1);
-                    Relationship relationship = new Relationship(rFig1, rFig2);
+                    Future<Relationship> relationship = fork(timed(SolveMetrics.Stage.LR_RELATIONSHIPS, () -> getRelationship(rFig1, rFig2)));
                     tempRelationshipList.add(relationship);
                 } else {
                     lastRavensFigureLR = figureList.get(i);
@@ -104,15 +182,15 @@ public class Agent {
         }
 
         // Determine up-down relationships between objects in figures
-        List<List<Relationship>> probRelationshipsListUD = new ArrayList<>(); //list of lists of relationships
+        List<List<Future<Relationship>>> probRelationshipsListUD = new ArrayList<>(); //list of lists of relationships
         RavensFigure lastRavensFigureUD = null;
         for (List<RavensFigure> figureList : ravensFiguresListUD) {
-            List<Relationship> tempRelationshipList = new ArrayList<>();
+            List<Future<Relationship>> tempRelationshipList = new ArrayList<>();
             for (int i = 0; i < figureList.size() - 1; i++) {
                 if (figureList.get(i+1) != null) {
                     RavensFigure rFig1 = figureList.get(i);
                     RavensFigure rFig2 = figureList.get(i+1);
-                    Relationship relationship = new Relationship(rFig1, rFig2);
+                    Future<Relationship> relationship = fork(timed(SolveMetrics.Stage.UD_RELATIONSHIPS, () -> getRelationship(rFig1, rFig2)));
                     tempRelationshipList.add(relationship);
                 } else {
                     lastRavensFigureUD = figureList.get(i);
@@ -123,63 +201,91 @@ public class Agent {
 
         // Determine diagonal relationship
         List<RavensFigure> ravensFiguresDiag = getRavensFiguresDiagonal(ravensFiguresListLR);
-        List<Relationship> diagonalRelationships = new ArrayList<>();
+        List<Future<Relationship>> diagonalRelationships = new ArrayList<>();
         RavensFigure lastRavensFigureDiag = null;
         for (int i = 0; i < ravensFiguresDiag.size() - 1; i++) {
             if (ravensFiguresDiag.get(i + 1) != null) {
                 RavensFigure rFig1 = ravensFiguresDiag.get(i);
                 RavensFigure rFig2 = ravensFiguresDiag.get(i + 1);
-                Relationship relationship = new Relationship(rFig1, rFig2);
+                Future<Relationship> relationship = fork(timed(SolveMetrics.Stage.DIAGONAL_RELATIONSHIPS, () -> getRelationship(rFig1, rFig2)));
                 diagonalRelationships.add(relationship);
             } else {
                 lastRavensFigureDiag = ravensFiguresDiag.get(i);
             }
         }
 
+        // Answer choices that are copies of each other are matched once
+        Map<String, String> representatives = determineRepresentatives(figureMap, solutionKeyList);
+        List<String> uniqueSolutionKeyList = new ArrayList<>(new LinkedHashSet<>(representatives.values()));
+
         // Determine left-right relationship to solutions (i.e. C -> #)
-        List<Relationship> solRelationshipsListLR = new ArrayList<>();
-        for (String name : solutionKeyList) {
+        List<Future<Relationship>> solRelationshipsListLR = new ArrayList<>();
+        for (String name : uniqueSolutionKeyList) {
             if (lastRavensFigureLR != null) {
-                RavensFigure rFig = figureMap.get(name);
-                Relationship relationship = new Relationship(lastRavensFigureLR, rFig);
+                RavensFigure rFig1 = lastRavensFigureLR;
+                RavensFigure rFig2 = figureMap.get(name);
+                Future<Relationship> relationship = fork(timed(SolveMetrics.Stage.ANSWER_RELATIONSHIPS, () -> getRelationship(rFig1, rFig2)));
                 solRelationshipsListLR.add(relationship);
             } else
-                System.out.println("lastRavensFigureLR not defined."); //debug only
+                Log.debug(() -> "lastRavensFigureLR not defined.");
         }
 
         // Determine up-down relationship to solutions (i.e. B -> #)
-        List<Relationship> solRelationshipsListUD = new ArrayList<>();
-        for (String name : solutionKeyList) {
+        List<Future<Relationship>> solRelationshipsListUD = new ArrayList<>();
+        for (String name : uniqueSolutionKeyList) {
             if (lastRavensFigureUD != null) {
-                RavensFigure rFig = figureMap.get(name);
-                Relationship relationship = new Relationship(lastRavensFigureUD, rFig);
+                RavensFigure rFig1 = lastRavensFigureUD;
+                RavensFigure rFig2 = figureMap.get(name);
+                Future<Relationship> relationship = fork(timed(SolveMetrics.Stage.ANSWER_RELATIONSHIPS, () -> getRelationship(rFig1, rFig2)));
                 solRelationshipsListUD.add(relationship);
             } else
-                System.out.println("lastRavensFigureUD not defined."); //debug only
+                Log.debug(() -> "lastRavensFigureUD not defined.");
         }
 
         // Determine diagonal relationship to solutions (i.e. A -> #)
-        List<Relationship> solRelationshipsListDiag = new ArrayList<>();
-        for (String name : solutionKeyList) {
+        List<Future<Relationship>> solRelationshipsListDiag = new ArrayList<>();
+        for (String name : uniqueSolutionKeyList) {
             if (lastRavensFigureDiag != null) {
-                RavensFigure rFig = figureMap.get(name);
-                Relationship relationship = new Relationship(lastRavensFigureDiag, rFig);
+                RavensFigure rFig1 = lastRavensFigureDiag;
+                RavensFigure rFig2 = figureMap.get(name);
+                Future<Relationship> relationship = fork(timed(SolveMetrics.Stage.ANSWER_RELATIONSHIPS, () -> getRelationship(rFig1, rFig2)));
                 solRelationshipsListDiag.add(relationship);
             } else
-                System.out.println("lastRavensFigureDiag not defined."); //debug only
+                Log.debug(() -> "lastRavensFigureDiag not defined.");
         }
 
-        // Perform transformation analysis for left-right
+        // Wait for the relationships of every direction
+        List<List<Relationship>> probRelationshipsLR = joinAll(probRelationshipsListLR);
+        List<List<Relationship>> probRelationshipsUD = joinAll(probRelationshipsListUD);
+        List<Relationship> diagonalRelationshipList = join(diagonalRelationships);
+        List<Relationship> solRelationshipsLR =
+                shareRelationships(join(solRelationshipsListLR), figureMap, solutionKeyList, representatives);
+        List<Relationship> solRelationshipsUD =
+                shareRelationships(join(solRelationshipsListUD), figureMap, solutionKeyList, representatives);
+        List<Relationship> solRelationshipsDiag =
+                shareRelationships(join(solRelationshipsListDiag), figureMap, solutionKeyList, representatives);
+
+        // Perform transformation analysis for each direction
+        Future<Map<String, Integer>> solScoresLR = fork(timed(SolveMetrics.Stage.SCORING,
+                () -> determineScores(probRelationshipsLR, solRelationshipsLR)));
+        Future<Map<String, Integer>> solScoresUD = fork(timed(SolveMetrics.Stage.SCORING,
+                () -> determineScores(probRelationshipsUD, solRelationshipsUD)));
+        Future<Map<String, Integer>> diagScores = fork(timed(SolveMetrics.Stage.SCORING,
+                () -> diagonalRelationshipList.isEmpty()
+                        ? new HashMap<String, Integer>()
+                        : determineDiagonalScore(diagonalRelationshipList, solRelationshipsDiag)));
         Map<String, Integer> solScoresMapLR = new HashMap<>();
-        solScoresMapLR.putAll(determineScores(probRelationshipsListLR, solRelationshipsListLR));
+        solScoresMapLR.putAll(join(solScoresLR));
         Map<String, Integer> solScoresMapUD = new HashMap<>();
-        solScoresMapUD.putAll(determineScores(probRelationshipsListUD, solRelationshipsListUD));
+        solScoresMapUD.putAll(join(solScoresUD));
+
+        stageStart = metrics.start();
 
         // Determine top picks for LR
         List<RavensFigure> solutionListLR = determineBestSolutions(figureMap, solScoresMapLR);
 
         // Determine top picks for UD
-        List<RavensFigure> solutionListUD = determineBestSolutions(figureMap, solScoresMapLR);
+        List<RavensFigure> solutionListUD = determineBestSolutions(figureMap, solScoresMapUD);
 
         // Determine that best solutions are what the two have in common
         List<RavensFigure> solutionList = generator.intersection(solutionListLR, solutionListUD);
@@ -188,8 +294,8 @@ public class Agent {
         Map<String, Integer> diagRelationshipScores = new HashMap<>();
         List<RavensFigure> diagSolutions;
         String diagSolution = null;
-        if (!diagonalRelationships.isEmpty()) {
-            diagRelationshipScores.putAll(determineDiagonalScore(diagonalRelationships, solRelationshipsListDiag));
+        if (!diagonalRelationshipList.isEmpty()) {
+            diagRelationshipScores.putAll(join(diagScores));
             diagSolutions = new ArrayList<>(determineBestSolutions(figureMap, diagRelationshipScores));
             if (diagSolutions.size() == 1)
                 diagSolution = diagSolutions.get(0).getName();
@@ -208,23 +314,409 @@ public class Agent {
         for (RavensFigure solution : solutionList)
             solStrings.add(solution.getName());
 
-        System.out.println(solStrings);
-        if (diagSolution != null)
-            System.out.println(diagSolution);
+        String diagonalAnswer = diagSolution;
+        Log.debug(() -> problem.getName() + " candidates " + solStrings
+                + (diagonalAnswer != null ? ", diagonal " + diagonalAnswer : ""));
 
         // If there is exactly one solution, return it
         // If there are more than one solution, check if a diagonal exists and use it
         // If there are less than four solutions and no diagonal, guess
         // If there are more than four solutions, skip
+        int answer = -1;
         if (solStrings.size() == 1)
-            return Integer.parseInt(solStrings.get(0));
+            answer = Integer.parseInt(solStrings.get(0));
         else if (solStrings.size() > 1 && solStrings.size() < 4) {
             if (diagSolution != null && solStrings.contains(diagSolution))
-                return Integer.parseInt(diagSolution);
+                answer = Integer.parseInt(diagSolution);
             else
-                return Integer.parseInt(solStrings.get(random.nextInt(solutionList.size())));
+                answer = Integer.parseInt(solStrings.get(random.nextInt(solutionList.size())));
+        }
+        metrics.stop(SolveMetrics.Stage.SELECTION, stageStart);
+        return answer;
+    }
+
+    /**
+     * This method solves a problem from the images of its figures. The left-right
+     * and up-down visual scores are added per candidate and the best candidate is
+     * picked the same way as for verbal problems.
+     *
+     * @param figureMap
+     * @param ravensFiguresListLR
+     * @param ravensFiguresListUD
+     * @param solutionKeyList
+     * @return The answer, or -1 to skip
+     */
+    public int solveVisual(Map<String, RavensFigure> figureMap,
+                           List<List<RavensFigure>> ravensFiguresListLR,
+                           List<List<RavensFigure>> ravensFiguresListUD,
+                           List<String> solutionKeyList) {
+
+        List<RavensFigure> solutions = new ArrayList<>();
+        for (String name : solutionKeyList)
+            solutions.add(figureMap.get(name));
+
+        Map<String, Integer> scoresLR;
+        Map<String, Integer> scoresUD;
+        visualEngine.reset();
+        long stageStart = metrics.start();
+        try {
+            scoresLR = visualEngine.determineScores(ravensFiguresListLR, solutions);
+            scoresUD = visualEngine.determineScores(ravensFiguresListUD, solutions);
+        } catch (IOException ex) {
+            Log.warn(() -> "Unable to read figure images: " + ex.getMessage());
+            return -1;
+        } finally {
+            metrics.stop(SolveMetrics.Stage.SCORING, stageStart);
+        }
+        stageStart = metrics.start();
+
+        // Both maps are keyed "lastFigure-candidate"; add them up per candidate
+        Map<String, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : scoresLR.entrySet()) {
+            String candidate = entry.getKey().split("-")[1];
+            for (Map.Entry<String, Integer> entryUD : scoresUD.entrySet())
+                if (entryUD.getKey().split("-")[1].equals(candidate))
+                    scores.put(entry.getKey(), entry.getValue() + entryUD.getValue());
+        }
+
+        List<RavensFigure> solutionList = determineBestSolutions(figureMap, scores);
+        int answer = -1;
+        if (solutionList.size() == 1)
+            answer = Integer.parseInt(solutionList.get(0).getName());
+        else if (solutionList.size() > 1 && solutionList.size() < 4)
+            answer = Integer.parseInt(solutionList.get(random.nextInt(solutionList.size())).getName());
+        metrics.stop(SolveMetrics.Stage.SELECTION, stageStart);
+        return answer;
+    }
+
+    /**
+     * This method runs a piece of work on the solve pool when parallel solving
+     * is enabled, or right away on the calling thread otherwise.
+     *
+     * @param task
+     * @return The pending or completed result of the task
+     */
+    private <T> Future<T> fork(Callable<T> task) {
+        if (parallelSolve)
+            return solvePool.submit(task);
+
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * This method wraps a piece of work so its running time is added to a
+     * stage of the current solve's metrics.
+     *
+     * @param stage
+     * @param task
+     * @return The timed task
+     */
+    private <T> Callable<T> timed(SolveMetrics.Stage stage, Callable<T> task) {
+        SolveMetrics.Recording recording = metrics;
+        return () -> {
+            long start = recording.start();
+            try {
+                return task.call();
+            } finally {
+                recording.stop(stage, start);
+            }
+        };
+    }
+
+    /**
+     * This method waits for a result from fork(), passing on any exception
+     * thrown by the task.
+     *
+     * @param future
+     * @return The result of the task
+     */
+    private <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private <T> List<T> join(List<Future<T>> futures) {
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures)
+            results.add(join(future));
+        return results;
+    }
+
+    private <T> List<List<T>> joinAll(List<List<Future<T>>> futureLists) {
+        List<List<T>> results = new ArrayList<>();
+        for (List<Future<T>> futures : futureLists)
+            results.add(join(futures));
+        return results;
+    }
+
+    /**
+     * This method pairs every answer choice with the first choice that is
+     * structurally identical to it, comparing canonical figure hashes.
+     *
+     * @param figureMap
+     * @param solutionKeyList
+     * @return The name of each choice's representative, in the order of the choices
+     */
+    public Map<String, String> determineRepresentatives(Map<String, RavensFigure> figureMap,
+                                                        List<String> solutionKeyList) {
+        Map<String, String> representatives = new LinkedHashMap<>();
+        List<String> unique = new ArrayList<>();
+        for (String name : solutionKeyList) {
+            CompiledFigure figure = getCompiledFigure(figureMap.get(name));
+            String representative = name;
+            for (String other : unique) {
+                if (getCompiledFigure(figureMap.get(other)).sameStructure(figure)) {
+                    representative = other;
+                    break;
+                }
+            }
+            if (representative.equals(name))
+                unique.add(name);
+            representatives.put(name, representative);
+        }
+        return representatives;
+    }
+
+    /**
+     * This method hands every answer choice the relationship matched for its
+     * representative, keeping the order of the choices.
+     *
+     * @param relationships the relationships to the representatives
+     * @param figureMap
+     * @param solutionKeyList
+     * @param representatives
+     * @return The relationship to every answer choice
+     */
+    private List<Relationship> shareRelationships(List<Relationship> relationships, Map<String, RavensFigure> figureMap,
+                                                  List<String> solutionKeyList, Map<String, String> representatives) {
+        Map<String, Relationship> byRepresentative = new HashMap<>();
+        for (Relationship relationship : relationships)
+            byRepresentative.put(relationship.getFig2().getName(), relationship);
+
+        List<Relationship> shared = new ArrayList<>();
+        for (String name : solutionKeyList) {
+            String representative = representatives.get(name);
+            Relationship relationship = byRepresentative.get(representative);
+            if (relationship == null)
+                continue;
+            shared.add(representative.equals(name) ? relationship : relationship.shareWith(figureMap.get(name)));
+        }
+        return shared;
+    }
+
+    /**
+     * This method returns the relationship between two figures, reusing an
+     * earlier result for a structurally identical pair of figures when it is
+     * still cached.
+     *
+     * @param fig1
+     * @param fig2
+     * @return The relationship between the two figures
+     */
+    public Relationship getRelationship(RavensFigure fig1, RavensFigure fig2) {
+        CompiledFigure compiled1 = getCompiledFigure(fig1);
+        CompiledFigure compiled2 = getCompiledFigure(fig2);
+        int[] mapping = relationshipCache.get(compiled1, compiled2);
+        if (mapping != null) {
+            metrics.count(SolveMetrics.Counter.RELATIONSHIP_CACHE_HITS, 1);
+            return new Relationship(compiled1, compiled2, createSemanticNetwork(matchMode), mapping);
+        }
+
+        Relationship relationship = createRelationship(compiled1, compiled2);
+        // Relationships cut short by the deadline are not worth keeping
+        if (relationship.isOptimal() && !deadline.isExpired())
+            relationshipCache.put(compiled1, compiled2, relationship);
+        return relationship;
+    }
+
+    /**
+     * This method builds the relationship between two figures using the
+     * agent's configured matching mode.
+     *
+     * @param fig1
+     * @param fig2
+     * @return The relationship between the two figures
+     */
+    public Relationship createRelationship(RavensFigure fig1, RavensFigure fig2) {
+        return createRelationship(getCompiledFigure(fig1), getCompiledFigure(fig2));
+    }
+
+    /**
+     * This method builds the relationship between two compiled figures using
+     * the agent's configured matching mode, or the assignment solver once the
+     * problem's deadline has expired.
+     *
+     * @param fig1
+     * @param fig2
+     * @return The relationship between the two figures
+     */
+    public Relationship createRelationship(CompiledFigure fig1, CompiledFigure fig2) {
+        // Once the problem's time is up, the remaining figures are matched the quickest way
+        MatchMode mode = deadline.isExpired() ? MatchMode.ASSIGNMENT : matchMode;
+        metrics.count(SolveMetrics.Counter.RELATIONSHIPS_BUILT, 1);
+        return new Relationship(fig1, fig2, createSemanticNetwork(mode));
+    }
+
+    private SemanticNetwork createSemanticNetwork(MatchMode mode) {
+        SemanticNetwork semanticNetwork = new SemanticNetwork(new Generator<>(), mode);
+        semanticNetwork.setNodeBudget(nodeBudget);
+        semanticNetwork.setTimeBudgetNanos(timeBudgetNanos);
+        semanticNetwork.setDeadline(deadline);
+        semanticNetwork.setCorrespondenceStore(correspondenceStore);
+        semanticNetwork.setPreserveRelations(preserveRelations);
+        semanticNetwork.setMetrics(metrics);
+        return semanticNetwork;
+    }
+
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    /**
+     * This method compiles the attributes of every figure in a problem so they
+     * can be compared without string lookups. Figures of earlier problems are
+     * dropped.
+     *
+     * @param figureMap
+     */
+    public void compileFigures(Map<String, RavensFigure> figureMap) {
+        compiledFigures = new IdentityHashMap<>();
+        for (RavensFigure figure : figureMap.values())
+            compiledFigures.put(figure, new CompiledFigure(figure));
+    }
+
+    /**
+     * @param figure
+     * @return The compiled form of the figure, compiling it if needed
+     */
+    public CompiledFigure getCompiledFigure(RavensFigure figure) {
+        CompiledFigure compiledFigure = compiledFigures.get(figure);
+        if (compiledFigure == null)
+            compiledFigure = new CompiledFigure(figure);
+        return compiledFigure;
+    }
+
+    // Cached relationships were built with the old settings, so drop them on change
+    public void setMatchMode(MatchMode matchMode) {
+        this.matchMode = matchMode;
+        relationshipCache.clear();
+    }
+
+    public void setNodeBudget(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+        relationshipCache.clear();
+    }
+
+    public void setTimeBudgetNanos(long timeBudgetNanos) {
+        this.timeBudgetNanos = timeBudgetNanos;
+        relationshipCache.clear();
+    }
+
+    /**
+     * This method turns on fanning out the relationship matching and scoring
+     * of a single problem over a fork-join pool.
+     *
+     * @param parallelSolve
+     * @param parallelism pool size, or 0 to use the common pool
+     */
+    public void setParallelSolve(boolean parallelSolve, int parallelism) {
+        shutdown();
+        this.parallelSolve = parallelSolve;
+        if (parallelSolve)
+            solvePool = parallelism > 0 ? new ForkJoinPool(parallelism) : ForkJoinPool.commonPool();
+    }
+
+    /**
+     * This method shuts down the fork-join pool the agent created for parallel
+     * solving, if any, and goes back to solving on the calling thread. The
+     * common pool is left running.
+     */
+    public void shutdown() {
+        if (solvePool != null && solvePool != ForkJoinPool.commonPool())
+            solvePool.shutdown();
+        solvePool = null;
+        parallelSolve = false;
+    }
+
+    /**
+     * This method runs the configured candidate filters in order. A filter
+     * that would drop every remaining candidate is skipped, so at least one
+     * candidate always reaches the matching stage.
+     *
+     * @param figureMap
+     * @param solutionKeyList
+     * @param ravensFiguresListLR
+     * @param ravensFiguresListUD
+     * @return The names of the candidates that passed every filter
+     */
+    public List<String> filterCandidates(Map<String, RavensFigure> figureMap, List<String> solutionKeyList,
+                                         List<List<RavensFigure>> ravensFiguresListLR,
+                                         List<List<RavensFigure>> ravensFiguresListUD) {
+        List<String> remaining = solutionKeyList;
+        for (CandidateFilter filter : candidateFilters) {
+            Predicate<RavensFigure> admits = filter.admits(ravensFiguresListLR, ravensFiguresListUD);
+            if (admits == null)
+                continue;
+
+            List<String> kept = new ArrayList<>();
+            List<String> dropped = new ArrayList<>();
+            for (String name : remaining) {
+                if (admits.test(figureMap.get(name)))
+                    kept.add(name);
+                else
+                    dropped.add(name);
+            }
+            if (kept.isEmpty() || dropped.isEmpty())
+                continue;
+
+            metrics.count(filter.getCounter(), dropped.size());
+            filteredCandidates.addAll(dropped);
+            remaining = kept;
         }
-        return -1;
+        return remaining;
+    }
+
+    /**
+     * @return The names of the candidates the filters dropped from the last problem solved
+     */
+    public List<String> getFilteredCandidates() {
+        return filteredCandidates;
+    }
+
+    /**
+     * @return Whether any candidate filters are configured
+     */
+    public boolean hasCandidateFilters() {
+        return !candidateFilters.isEmpty();
+    }
+
+    /**
+     * @return Whether the last problem solved ran out of its time budget
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    public boolean isParallelSolve() {
+        return parallelSolve;
+    }
+
+    public RelationshipCache getRelationshipCache() {
+        return relationshipCache;
     }
 
     /**
@@ -344,25 +836,63 @@ public class Agent {
             objDiffList.add(objDiffs);
         }
 
-        Integer bestScore = null;
+        // Score the known part of the last row once; each candidate only adds its own relationship
+        List<Relationship> lastRow = probRelationshipList.get(probRelationshipList.size() - 1);
+        RowPrefixScorer transformationScorer = new RowPrefixScorer(transformationsList, determineTransformations(lastRow));
+        RowPrefixScorer objDiffScorer = new RowPrefixScorer(objDiffList, determineNumObjGrowing(lastRow));
+        int growing = 0;
+        int shrinking = 0;
+        for (Relationship relationship : lastRow) {
+            if (relationship.getNumObjDiff() > 0)
+                growing++;
+            else if (relationship.getNumObjDiff() < 0)
+                shrinking++;
+        }
+
+        List<String> addedObjDiffs = new ArrayList<>(1);
+        List<String> removedObjDiffs = new ArrayList<>(1);
         for (Relationship solRelation : solRelationshipList) {
-            List<Relationship> tempRelationships =
-                    new ArrayList<>((probRelationshipList.get(probRelationshipList.size() - 1)));
-            tempRelationships.add(solRelation);
-            List<String> tempTransformations = determineTransformations(tempRelationships);
-            List<String> tempObjDiffs = determineNumObjGrowing(tempRelationships);
-
-            int score = determineTransformationScores(transformationsList, tempTransformations);
-            score += determineTransformationScores(objDiffList, tempObjDiffs);
+            // Past the grace period only the candidates scored so far compete
+            if (deadline.isOverrun() && !solRelationshipScores.isEmpty())
+                break;
+            int score = transformationScorer.score(determineTransformations(Collections.singletonList(solRelation)));
+            addedObjDiffs.clear();
+            removedObjDiffs.clear();
+            determineObjDiffDelta(growing, shrinking, solRelation, addedObjDiffs, removedObjDiffs);
+            score += objDiffScorer.score(addedObjDiffs, removedObjDiffs);
             solRelationshipScores.put(solRelation.getName(), score);
-            if ((bestScore == null) || (score > bestScore)) {
-                bestScore = score;
-            }
         }
 
         return solRelationshipScores;
     }
 
+    /**
+     * This method determines how appending a relationship to a row changes the
+     * row's object differences from determineNumObjGrowing. The relationship's
+     * difference is added, unless the row so far only changed the other way,
+     * in which case the two cancel out and one of the row's differences goes.
+     *
+     * @param growing number of relationships in the row adding objects
+     * @param shrinking number of relationships in the row removing objects
+     * @param relationship
+     * @param added receives the object differences added to the row
+     * @param removed receives the object differences removed from the row
+     */
+    private void determineObjDiffDelta(int growing, int shrinking, Relationship relationship,
+                                       List<String> added, List<String> removed) {
+        if (relationship.getNumObjDiff() > 0) {
+            if (growing == 0 && shrinking > 0)
+                removed.add("shrinking");
+            else
+                added.add("growing");
+        } else if (relationship.getNumObjDiff() < 0) {
+            if (shrinking == 0 && growing > 0)
+                removed.add("growing");
+            else
+                added.add("shrinking");
+        }
+    }
+
     /**
      * This method determines the diagonal scores in the same manner as above. A solution is attempted
      * and the scores are returned for each of these.
@@ -377,36 +907,33 @@ public class Agent {
         Map<String, Integer> solRelationshipScores = new HashMap<>(); //store all scores for evaluation of confidence
         List<String> diagTransformations = determineTransformations(diagRelationshipList); //same thing as getTransformations
         List<String> objDiffs = new ArrayList<>(determineNumObjGrowing(diagRelationshipList));
-        List<List<String>> tempDiagObjDiffs = new ArrayList<>();
-        tempDiagObjDiffs.add(objDiffs);
+
+        List<List<String>> solTransformationsList = new ArrayList<>();
+        List<List<String>> solObjDiffList = new ArrayList<>();
         for (Relationship solRelationship : solRelationshipList) {
+            // Past the grace period only the candidates scored so far compete
+            if (deadline.isOverrun() && !solTransformationsList.isEmpty())
+                break;
             List<Relationship> tempSolRelationshipList = new ArrayList<>();
             tempSolRelationshipList.add(solRelationship);
-            List<String> tempSolObjDiffs = new ArrayList<>(determineNumObjGrowing(tempSolRelationshipList));
-
-            List<String> solTransformations = new ArrayList<>();
-            Map<String, List<String>> transformations = solRelationship.getTransformationMap();
-            for (List<String> pairTransformations : transformations.values())
-                for (String transformation : pairTransformations)
-                    solTransformations.add(transformation);
-
-            List<String> tempTransformations = new ArrayList<>(solTransformations);
-            int score = 0;
-            for (String transformation : diagTransformations) {
-                if (tempTransformations.contains(transformation)) {
-                    tempTransformations.remove(transformation);
-                    score++;
-                } else
-                    score--;
-
-            }
-
-            tempTransformations.removeAll(Arrays.asList("unchanged"));
-
-            score += determineTransformationScores(tempDiagObjDiffs, tempSolObjDiffs);
-            score -= tempTransformations.size();
+            solTransformationsList.add(determineTransformations(tempSolRelationshipList));
+            solObjDiffList.add(determineNumObjGrowing(tempSolRelationshipList));
+        }
 
-            solRelationshipScores.put(solRelationship.getName(), score);
+        TransformationVocabulary vocabulary = new TransformationVocabulary();
+        vocabulary.add(diagTransformations);
+        vocabulary.add(objDiffs);
+        vocabulary.addAll(solTransformationsList);
+        vocabulary.addAll(solObjDiffList);
+
+        int[] diagCounts = vocabulary.histogram(diagTransformations);
+        int[] objDiffCounts = vocabulary.histogram(objDiffs);
+        int[][] solTransformationCounts = vocabulary.histograms(solTransformationsList);
+        int[][] solObjDiffCounts = vocabulary.histograms(solObjDiffList);
+        for (int i = 0; i < solTransformationsList.size(); i++) {
+            int score = TransformationVocabulary.score(diagCounts, solTransformationCounts[i]);
+            score += TransformationVocabulary.score(objDiffCounts, solObjDiffCounts[i]);
+            solRelationshipScores.put(solRelationshipList.get(i).getName(), score);
         }
 
         return solRelationshipScores;
@@ -441,22 +968,12 @@ public class Agent {
      */
     public int determineTransformationScores(List<List<String>> transformationsList,
                                              List<String> tempTransformations) {
-        int score = 0;
-        for (List<String> transformations : transformationsList) {
-            List<String> solTransformations = new ArrayList<>(tempTransformations);
-
-            for (String transformation : transformations) {
-                if (solTransformations.contains(transformation)) {
-                    solTransformations.remove(transformation);
-                    score++;
-                } else
-                    score--;
-            }
+        TransformationVocabulary vocabulary = new TransformationVocabulary();
+        vocabulary.addAll(transformationsList);
+        vocabulary.add(tempTransformations);
 
-            solTransformations.removeAll(Arrays.asList("unchanged"));
-
-            score -= solTransformations.size();
-        }
+        int score = TransformationVocabulary.score(vocabulary.histograms(transformationsList),
+                vocabulary.histogram(tempTransformations));
 
         return score;
     }
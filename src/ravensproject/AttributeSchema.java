@@ -0,0 +1,143 @@
+package ravensproject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This is the dictionary used to compile object attributes into packed codes.
+ * Each of the attributes the SemanticNetwork scores directly gets an 8-bit
+ * lane in a long; the lane holds the interned code of the attribute's value,
+ * or 0 when the object does not have the attribute. Attribute equality and
+ * "which attributes changed" then come down to a few XOR and mask operations.
+ *
+ * Codes are shared by every figure, so the same value always gets the same
+ * code. Once an attribute has 255 distinct values, further values cannot be
+ * encoded and objects using them fall back to the string comparisons.
+ */
+public class AttributeSchema {
+
+    public static final int SHAPE = 0;
+    public static final int SIZE = 1;
+    public static final int WIDTH = 2;
+    public static final int HEIGHT = 3;
+    public static final int FILL = 4;
+    public static final int ALIGNMENT = 5;
+    public static final int ANGLE = 6;
+
+    public static final String[] NAMES = {
+            "shape", "size", "width", "height", "fill", "alignment", "angle"
+    };
+
+    public static final List<String> SIZE_LIST = Arrays.asList(
+            "very small", "small", "medium", "large", "very large", "huge"
+    );
+
+    private static final int MAX_CODES = 256;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private static final ConcurrentHashMap<String, Integer>[] codes = createCodeMaps();
+    private static final AtomicReferenceArray<String>[] values = createValueArrays();
+    private static final AtomicIntegerArray[] ordinals = createIntArrays(); //index in SIZE_LIST
+    private static final AtomicIntegerArray[] numbers = createIntArrays(); //parsed angle
+    private static final int[] nextCode = new int[NAMES.length];
+
+    private AttributeSchema() {
+    }
+
+    /**
+     * This method returns the code for an attribute value, assigning a new
+     * code the first time the value is seen.
+     *
+     * @param field the attribute lane, e.g. SHAPE
+     * @param value the attribute value
+     * @return The code for the value, or 0 if the attribute has run out of codes
+     * @throws NumberFormatException if an angle is not a number
+     */
+    public static int intern(int field, String value) {
+        Integer code = codes[field].get(value);
+        if (code != null)
+            return code;
+
+        synchronized (codes[field]) {
+            code = codes[field].get(value);
+            if (code != null)
+                return code;
+            if (nextCode[field] + 1 >= MAX_CODES)
+                return 0;
+            int number = field == ANGLE ? Integer.parseInt(value) : 0;
+
+            int newCode = ++nextCode[field];
+            values[field].set(newCode, value);
+            ordinals[field].set(newCode, SIZE_LIST.indexOf(value));
+            numbers[field].set(newCode, number);
+            codes[field].put(value, newCode);
+            return newCode;
+        }
+    }
+
+    public static String value(int field, int code) {
+        return values[field].get(code);
+    }
+
+    public static int ordinal(int field, int code) {
+        return ordinals[field].get(code);
+    }
+
+    public static int number(int field, int code) {
+        return numbers[field].get(code);
+    }
+
+    /**
+     * @param codes packed attribute codes
+     * @param field the attribute lane
+     * @return The code held in the given lane
+     */
+    public static int lane(long codes, int field) {
+        return (int) (codes >>> (field * 8)) & 0xFF;
+    }
+
+    /**
+     * This method marks every non-zero lane by setting that lane's high bit.
+     *
+     * @param codes packed attribute codes
+     * @return The high bit of each lane that holds a code
+     */
+    public static long presentLanes(long codes) {
+        return (((codes & LOW_BITS) + LOW_BITS) | codes) & HIGH_BITS;
+    }
+
+    /**
+     * @param field the attribute lane
+     * @return The high bit of the given lane
+     */
+    public static long laneBit(int field) {
+        return 0x80L << (field * 8);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ConcurrentHashMap<String, Integer>[] createCodeMaps() {
+        ConcurrentHashMap<String, Integer>[] maps = new ConcurrentHashMap[NAMES.length];
+        for (int i = 0; i < maps.length; i++)
+            maps[i] = new ConcurrentHashMap<>();
+        return maps;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<String>[] createValueArrays() {
+        AtomicReferenceArray<String>[] arrays = new AtomicReferenceArray[NAMES.length];
+        for (int i = 0; i < arrays.length; i++)
+            arrays[i] = new AtomicReferenceArray<>(MAX_CODES);
+        return arrays;
+    }
+
+    private static AtomicIntegerArray[] createIntArrays() {
+        AtomicIntegerArray[] arrays = new AtomicIntegerArray[NAMES.length];
+        for (int i = 0; i < arrays.length; i++)
+            arrays[i] = new AtomicIntegerArray(MAX_CODES);
+        return arrays;
+    }
+}
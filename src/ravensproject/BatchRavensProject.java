@@ -0,0 +1,243 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A driver that solves the problem sets like RavensProject does, but spreads
+ * the problems over a pool of worker threads. Problems are read lazily through
+ * StreamingProblemSet, so only the problems in flight are held in memory. A
+ * fixed pool of one Agent per worker is shared by the tasks: each task borrows
+ * an Agent for its problem and hands it back, so an Agent's caches carry over
+ * between problems and at most one solve pool per worker is created, however
+ * many threads the tasks run on. Because the Agent seeds its guesses per
+ * problem the answers do not depend on which Agent solved a problem or in
+ * what order.
+ * ProblemResults.csv and SetResults.csv are written in the same order as a
+ * sequential run.
+ * SetResults.csv also reports the relationship cache's hits, misses and
+ * evictions for each set.
+ *
+ * The number of workers is set with -Dravens.workers (default: one per core).
+ * -Dravens.virtualThreads=true runs each problem on a virtual thread when the
+ * JVM supports them and falls back to the worker pool otherwise.
+ * -Dravens.corpus=file reads the problems from a corpus compiled by
+ * CorpusCompiler instead of the Problems/ text tree.
+ * -Dravens.metrics=true also writes per-stage latency percentiles and work
+ * counts per problem type to SolveMetrics.csv (see SolveMetrics).
+ * -Dravens.problemBudgetMs=n gives each problem n milliseconds; once they are
+ * up the Agent finishes with the quickest matching and answers with the best
+ * candidate found so far, and -Dravens.problemGraceMs (default: a quarter of
+ * the budget) is how much longer it may take to score the candidates. The
+ * number of problems that ran out of time is added to SetResults.csv.
+ * -Dravens.candidateFilters=OBJECT_COUNT,SHAPES drops candidates the cheap
+ * checks of CandidateFilter rule out before they are matched. SetResults.csv
+ * then also gets the number of candidates dropped and the number of problems
+ * whose correct answer was dropped, which should stay 0.
+ * -Dravens.correspondenceStore=file keeps the object mappings found in a
+ * memory-mapped file, so later runs replay them instead of matching again
+ * (see CorrespondenceStore); -Dravens.correspondenceStoreMb caps its size.
+ * -Dravens.preserveRelations=true breaks ties between equally scored object
+ * mappings by how many left-of, above, overlaps and inside relations they keep.
+ */
+public class BatchRavensProject {
+
+    public static void main(String[] args) {
+        int workers = Integer.getInteger("ravens.workers", Runtime.getRuntime().availableProcessors());
+        boolean virtualThreads = Boolean.getBoolean("ravens.virtualThreads");
+        String corpusPath = System.getProperty("ravens.corpus");
+        boolean reportTimeouts = Long.getLong("ravens.problemBudgetMs", 0L) > 0;
+        boolean reportFilters = !System.getProperty("ravens.candidateFilters", "").trim().isEmpty();
+
+        BlockingQueue<Agent> agents = new ArrayBlockingQueue<>(Math.max(1, workers));
+        for (int i = 0; i < Math.max(1, workers); i++)
+            agents.add(new Agent());
+        ExecutorService executor = createExecutor(workers, virtualThreads);
+        try (PrintWriter results = new PrintWriter("ProblemResults.csv");
+             PrintWriter setResults = new PrintWriter("SetResults.csv")) {
+
+            results.println("Problem,Agent's Answer,Correct?,Correct Answer");
+            setResults.println("Set,Correct,Incorrect,Skipped" + (reportTimeouts ? ",Timeouts" : "")
+                    + (reportFilters ? ",Filtered,FilterMisses" : "") + ",CacheHits,CacheMisses,CacheEvictions");
+            BatchRavensProject batch = new BatchRavensProject(executor, agents, Math.max(1, workers) * 4,
+                    results, setResults, reportTimeouts, reportFilters);
+
+            if (corpusPath != null) {
+                try (CorpusFile corpus = new CorpusFile(new File(corpusPath))) {
+                    for (int set = 0; set < corpus.getSetCount(); set++)
+                        batch.solveSet(corpus.getSetName(set), corpus.problems(set));
+                }
+            } else {
+                for (String setName : StreamingProblemSet.readSetNames())
+                    batch.solveSet(setName, new StreamingProblemSet(setName));
+            }
+        } catch(IOException ex) {
+            Log.error(() -> "Unable to read problems or create results file: " + ex);
+        } catch(InterruptedException | ExecutionException ex) {
+            Log.error(() -> "Batch run interrupted", ex);
+        } finally {
+            executor.shutdownNow();
+            for (Agent agent : agents)
+                agent.shutdown();
+            Log.flush();
+        }
+    }
+
+    private ExecutorService executor;
+    private BlockingQueue<Agent> agents;
+    private int window;
+    private PrintWriter results;
+    private PrintWriter setResults;
+    private boolean reportTimeouts;
+    private boolean reportFilters;
+
+    private BatchRavensProject(ExecutorService executor, BlockingQueue<Agent> agents, int window,
+                               PrintWriter results, PrintWriter setResults, boolean reportTimeouts,
+                               boolean reportFilters) {
+        this.executor = executor;
+        this.agents = agents;
+        this.window = window;
+        this.results = results;
+        this.setResults = setResults;
+        this.reportTimeouts = reportTimeouts;
+        this.reportFilters = reportFilters;
+    }
+
+    /**
+     * This method solves the problems of one set and writes their results.
+     * Problems are taken from the iterator as they are submitted and only a
+     * window of them is in flight; results are written in submission order as
+     * the oldest pending problem completes. A problem that cannot be loaded
+     * gets an error line and counts as skipped; if the set itself cannot be
+     * read further, the problems already submitted are still written.
+     *
+     * @param setName
+     * @param problems
+     */
+    private void solveSet(String setName, Iterable<RavensProblem> problems)
+            throws InterruptedException, ExecutionException {
+
+        SetTotals totals = new SetTotals();
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        try {
+            Iterator<RavensProblem> iterator = problems.iterator();
+            while(iterator.hasNext()) {
+                try {
+                    RavensProblem problem = iterator.next();
+                    pending.add(executor.submit(() -> solve(problem, totals)));
+                } catch(StreamingProblemSet.ProblemLoadException ex) {
+                    Log.error(() -> "Unable to load " + ex.getProblemName(), ex.getCause());
+                    totals.recordSkipped();
+                    pending.add(CompletableFuture.completedFuture(ex.getProblemName() + ",,Error,"));
+                }
+                if(pending.size() >= window)
+                    results.println(pending.poll().get());
+            }
+        } catch(UncheckedIOException ex) {
+            Log.error(() -> "Unable to read problem set " + setName, ex.getCause());
+        }
+        while(!pending.isEmpty())
+            results.println(pending.poll().get());
+
+        setResults.println(setName + "," + totals.getTotal("Correct") + "," + totals.getTotal("Incorrect") + "," + totals.getTotal("Skipped")
+                + (reportTimeouts ? "," + totals.getTimeouts() : "")
+                + (reportFilters ? "," + totals.getFiltered() + "," + totals.getFilterMisses() : "")
+                + "," + totals.getCacheHits() + "," + totals.getCacheMisses() + "," + totals.getCacheEvictions());
+    }
+
+    /**
+     * This method borrows an Agent from the pool, solves a single problem with
+     * it and hands it back.
+     *
+     * @param problem
+     * @param totals the running totals of the problem's set
+     * @return The result line for the problem
+     */
+    private String solve(RavensProblem problem, SetTotals totals) throws InterruptedException {
+        Agent agent = agents.take();
+        try {
+            return solve(agent, problem, totals);
+        } finally {
+            agents.put(agent);
+        }
+    }
+
+    /**
+     * This method solves a single problem and returns its line for
+     * ProblemResults.csv. Errors are reported the same way RavensProject
+     * reports them.
+     *
+     * @param agent the agent borrowed for the problem
+     * @param problem
+     * @param totals the running totals of the problem's set
+     * @return The result line for the problem
+     */
+    private static String solve(Agent agent, RavensProblem problem, SetTotals totals) {
+        RelationshipCache cache = agent.getRelationshipCache();
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        long evictions = cache.getEvictions();
+        try {
+            problem.setAnswerReceived(agent.Solve(problem));
+            if (agent.isTimedOut())
+                totals.recordTimeout();
+            if (agent.hasCandidateFilters())
+                auditFilters(agent, problem, totals);
+            return problem.getName() + "," + problem.getGivenAnswer() + "," + problem.getCorrect() + "," + problem.checkAnswer(0);
+        } catch(Exception ex) {
+            Log.error(() -> "Error encountered in " + problem.getName(), ex);
+            return problem.getName() + "," + problem.getGivenAnswer() + ",Error," + problem.checkAnswer(0);
+        } finally {
+            totals.record(problem);
+            totals.recordCache(cache.getHits() - hits, cache.getMisses() - misses, cache.getEvictions() - evictions);
+        }
+    }
+
+    /**
+     * This method counts the candidates the agent's filters dropped from a
+     * solved problem and reports it when the correct answer was one of them.
+     *
+     * @param agent the agent that solved the problem
+     * @param problem
+     * @param totals the running totals of the problem's set
+     */
+    private static void auditFilters(Agent agent, RavensProblem problem, SetTotals totals) {
+        List<String> filtered = agent.getFilteredCandidates();
+        boolean missed = filtered.contains(String.valueOf(problem.checkAnswer(0)));
+        if (missed)
+            Log.warn(() -> "Candidate filters dropped the correct answer of " + problem.getName());
+        totals.recordFiltered(filtered.size(), missed);
+    }
+
+    /**
+     * This method creates the executor the problems run on.
+     *
+     * @param workers number of worker threads
+     * @param virtualThreads whether to run each problem on its own virtual thread
+     * @return The executor
+     */
+    private static ExecutorService createExecutor(int workers, boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (ExecutorService) factory.invoke(null);
+            } catch(ReflectiveOperationException ex) {
+                Log.warn(() -> "Virtual threads are not available, using " + workers + " worker threads");
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, workers));
+    }
+}
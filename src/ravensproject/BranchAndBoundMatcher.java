@@ -0,0 +1,258 @@
+package ravensproject;
+
+/**
+ * This is an anytime branch-and-bound search over partial mappings of one
+ * figure's objects onto another figure's objects. Rows (figure1 objects) are
+ * assigned one at a time, trying the highest scoring columns (figure2 objects)
+ * first, and a subtree is pruned when even the best remaining score of every
+ * unassigned row could not beat the best mapping found so far.
+ *
+ * Unlike the assignment solver, the search can score more than the sum of
+ * the pairwise scores: given the figures' spatial relations, every left-of,
+ * above, overlaps or inside relation the mapping carries over from figure1
+ * to figure2 adds RELATION_SCORE. That term depends on how the objects are
+ * placed relative to each other, so it is counted as each pair of rows is
+ * completed and bounded by the relations not yet decided.
+ *
+ * The search stops early once its node or time budget runs out, but never
+ * before it has reached the first (greedy) mapping. The best mapping found up
+ * to that point is returned and isOptimal() reports false.
+ */
+public class BranchAndBoundMatcher {
+
+    // Score for each spatial relation a mapping preserves
+    public static final int RELATION_SCORE = 1;
+
+    private long nodeBudget;
+    private long timeBudgetNanos;
+    private Deadline deadline;
+
+    private int[][] scores;
+    private SpatialRelations relations1;
+    private SpatialRelations relations2;
+    private int[][] columnOrder;
+    private int[] remainingBound;
+    private int[] undecidedRelations;
+    private boolean[] usedColumns;
+    private int[] mapping;
+
+    private int[] bestMapping;
+    private int bestScore;
+    private long nodes;
+    private long stopAt;
+    private boolean exhausted;
+
+    public BranchAndBoundMatcher() {
+        this(Long.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param nodeBudget maximum number of search nodes to expand
+     * @param timeBudgetNanos maximum search time, or 0 for no limit
+     */
+    public BranchAndBoundMatcher(long nodeBudget, long timeBudgetNanos) {
+        this.nodeBudget = nodeBudget;
+        this.timeBudgetNanos = timeBudgetNanos;
+        deadline = Deadline.NONE;
+    }
+
+    /**
+     * This method sets a deadline the search must also stop at, such as the
+     * deadline of the problem being solved.
+     *
+     * @param deadline
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * This method searches for the mapping of rows to columns with the highest
+     * total pairwise score.
+     *
+     * @param scores square matrix of pairwise scores
+     * @return The column chosen for each row, or null if no mapping scores above zero
+     */
+    public int[] search(int[][] scores) {
+        return search(scores, null, null);
+    }
+
+    /**
+     * This method searches for the mapping of rows to columns with the highest
+     * total score, counting the pairwise scores and the spatial relations the
+     * mapping preserves. Like the exhaustive search, only mappings scoring
+     * above zero are reported, unless the budget ran out first.
+     *
+     * @param scores square matrix of pairwise scores
+     * @param relations1 figure1's spatial relations, or null to score pairs only
+     * @param relations2 figure2's spatial relations, or null to score pairs only
+     * @return The column chosen for each row, or null if no mapping scores above zero
+     *         and the search ran to completion
+     */
+    public int[] search(int[][] scores, SpatialRelations relations1, SpatialRelations relations2) {
+        int n = scores.length;
+        this.scores = scores;
+        boolean related = relations1 != null && relations2 != null
+                && relations1.getEdgeCount() > 0 && relations2.getEdgeCount() > 0;
+        this.relations1 = related ? relations1 : null;
+        this.relations2 = related ? relations2 : null;
+        usedColumns = new boolean[n];
+        mapping = new int[n];
+        bestMapping = null;
+        bestScore = 0;
+        nodes = 0;
+        exhausted = false;
+        stopAt = System.nanoTime() + timeBudgetNanos;
+
+        // Try each row's columns from best to worst so the first leaf is the greedy mapping
+        columnOrder = new int[n][];
+        remainingBound = new int[n + 1];
+        for (int i = n - 1; i >= 0; i--) {
+            columnOrder[i] = sortColumns(scores[i]);
+            int rowMax = scores[i][columnOrder[i][0]];
+            remainingBound[i] = remainingBound[i + 1] + rowMax;
+        }
+
+        // A relation is decided once both of its objects have been assigned
+        undecidedRelations = new int[n + 1];
+        if (related) {
+            int size = Math.min(relations1.size(), n);
+            for (int relation = 0; relation < SpatialRelations.NAMES.length; relation++)
+                for (int i = 0; i < size; i++)
+                    for (int k = 0; k < size; k++)
+                        if (relations1.hasEdge(relation, i, k))
+                            undecidedRelations[Math.max(i, k)] += RELATION_SCORE;
+            for (int i = n - 1; i >= 0; i--)
+                undecidedRelations[i] += undecidedRelations[i + 1];
+        }
+
+        expand(0, 0);
+
+        // A search cut short keeps its best mapping even when that scores nothing
+        return bestScore > 0 || exhausted ? bestMapping : null;
+    }
+
+    /**
+     * This method assigns a column to the given row and recurses into the
+     * remaining rows.
+     *
+     * @param row the row being assigned
+     * @param score the score of the rows assigned so far
+     */
+    private void expand(int row, int score) {
+        if (exhausted)
+            return;
+
+        if (row == mapping.length) {
+            if (score > bestScore || bestMapping == null) {
+                bestScore = score;
+                bestMapping = mapping.clone();
+            }
+            return;
+        }
+
+        // Optimistic bound: every remaining row gets its best column and keeps every relation
+        if (score + remainingBound[row] + undecidedRelations[row] <= bestScore)
+            return;
+
+        for (int column : columnOrder[row]) {
+            if (usedColumns[column])
+                continue;
+
+            // The budget only applies once there is a mapping to fall back on
+            nodes++;
+            if (bestMapping != null && (nodes > nodeBudget || ((nodes & 0x3FF) == 0 && isTimeUp()))) {
+                exhausted = true;
+                return;
+            }
+
+            usedColumns[column] = true;
+            mapping[row] = column;
+            expand(row + 1, score + scores[row][column] + preservedRelations(row, column));
+            usedColumns[column] = false;
+
+            if (exhausted)
+                return;
+        }
+    }
+
+    /**
+     * This method scores the relations between the given row and the rows
+     * assigned before it (and itself) that the mapping carries over.
+     *
+     * @param row the row just assigned
+     * @param column the column it was assigned
+     * @return The score of the relations decided by the assignment
+     */
+    private int preservedRelations(int row, int column) {
+        if (relations1 == null || row >= relations1.size() || column >= relations2.size())
+            return 0;
+
+        int preserved = 0;
+        for (int relation = 0; relation < SpatialRelations.NAMES.length; relation++) {
+            for (int k = 0; k <= row; k++) {
+                int other = k == row ? column : mapping[k];
+                if (other >= relations2.size())
+                    continue;
+                if (relations1.hasEdge(relation, row, k) && relations2.hasEdge(relation, column, other))
+                    preserved++;
+                if (k != row && relations1.hasEdge(relation, k, row) && relations2.hasEdge(relation, other, column))
+                    preserved++;
+            }
+        }
+        return preserved * RELATION_SCORE;
+    }
+
+    private boolean isTimeUp() {
+        return (timeBudgetNanos > 0 && System.nanoTime() - stopAt > 0) || deadline.isExpired();
+    }
+
+    /**
+     * This method sorts the column indices of a row by descending score.
+     *
+     * @param rowScores
+     * @return The column indices from best to worst
+     */
+    private int[] sortColumns(int[] rowScores) {
+        int n = rowScores.length;
+        int[] order = new int[n];
+        for (int j = 0; j < n; j++)
+            order[j] = j;
+
+        // Insertion sort keeps equal scores in column order
+        for (int i = 1; i < n; i++) {
+            int column = order[i];
+            int j = i - 1;
+            while (j >= 0 && rowScores[order[j]] < rowScores[column]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = column;
+        }
+
+        return order;
+    }
+
+    /**
+     * @return Whether the last search finished without running out of budget
+     */
+    public boolean isOptimal() {
+        return !exhausted;
+    }
+
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+
+    public long getTimeBudgetNanos() {
+        return timeBudgetNanos;
+    }
+}
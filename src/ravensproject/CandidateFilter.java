@@ -0,0 +1,145 @@
+package ravensproject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * The cheap checks Agent.Solve can use to drop answer candidates before they
+ * are matched against the matrix. Each filter looks at O(objects) signatures
+ * of the figures and only speaks up when the complete rows and the complete
+ * columns show the same clear pattern; otherwise it admits every candidate.
+ */
+public enum CandidateFilter {
+
+    /**
+     * When every complete row adds the same number of objects in its last
+     * step, and so does every complete column, and both predict the same
+     * count for the missing figure, candidates with another count are dropped.
+     */
+    OBJECT_COUNT(SolveMetrics.Counter.OBJECT_COUNT_FILTERED) {
+        @Override
+        public Predicate<RavensFigure> admits(List<List<RavensFigure>> ravensFiguresListLR,
+                                              List<List<RavensFigure>> ravensFiguresListUD) {
+            Integer countLR = predictObjectCount(ravensFiguresListLR);
+            Integer countUD = predictObjectCount(ravensFiguresListUD);
+            if (countLR == null || !countLR.equals(countUD))
+                return null;
+            int count = countLR;
+            return candidate -> candidate.getObjects().size() == count;
+        }
+    },
+
+    /**
+     * When the last figure of every complete row and column only has shapes
+     * that appear earlier in its row or column, candidates with a shape that
+     * appears in neither the last row nor the last column are dropped.
+     */
+    SHAPES(SolveMetrics.Counter.SHAPES_FILTERED) {
+        @Override
+        public Predicate<RavensFigure> admits(List<List<RavensFigure>> ravensFiguresListLR,
+                                              List<List<RavensFigure>> ravensFiguresListUD) {
+            Set<String> shapesLR = predictShapes(ravensFiguresListLR);
+            Set<String> shapesUD = predictShapes(ravensFiguresListUD);
+            if (shapesLR == null || shapesUD == null)
+                return null;
+            Set<String> shapes = new HashSet<>(shapesLR);
+            shapes.addAll(shapesUD);
+            return candidate -> shapes.containsAll(shapesOf(candidate));
+        }
+    };
+
+    private SolveMetrics.Counter counter;
+
+    CandidateFilter(SolveMetrics.Counter counter) {
+        this.counter = counter;
+    }
+
+    /**
+     * @return The metrics counter for the candidates this filter drops
+     */
+    public SolveMetrics.Counter getCounter() {
+        return counter;
+    }
+
+    /**
+     * This method looks for the filter's pattern in the matrix.
+     *
+     * @param ravensFiguresListLR the matrix by rows, with null in place of the missing figure
+     * @param ravensFiguresListUD the matrix by columns, with null in place of the missing figure
+     * @return The test a candidate must pass, or null if the matrix shows no clear pattern
+     */
+    public abstract Predicate<RavensFigure> admits(List<List<RavensFigure>> ravensFiguresListLR,
+                                                   List<List<RavensFigure>> ravensFiguresListUD);
+
+    /**
+     * This method reads a comma-separated list of filter names.
+     *
+     * @param names e.g. "OBJECT_COUNT,SHAPES", or an empty string for none
+     * @return The filters in the order given
+     * @throws IllegalArgumentException if a name is not a filter
+     */
+    public static List<CandidateFilter> parse(String names) {
+        List<CandidateFilter> filters = new ArrayList<>();
+        for (String name : names.split(","))
+            if (!name.trim().isEmpty())
+                filters.add(valueOf(name.trim()));
+        return filters;
+    }
+
+    /**
+     * @return The object count the missing figure should have, or null if the rows disagree
+     */
+    private static Integer predictObjectCount(List<List<RavensFigure>> ravensFiguresList) {
+        int rows = ravensFiguresList.size();
+        List<RavensFigure> lastRow = ravensFiguresList.get(rows - 1);
+        int cols = lastRow.size();
+        if (rows < 2 || cols < 2)
+            return null;
+
+        Integer step = null;
+        for (int r = 0; r < rows - 1; r++) {
+            List<RavensFigure> row = ravensFiguresList.get(r);
+            int rowStep = row.get(cols - 1).getObjects().size() - row.get(cols - 2).getObjects().size();
+            if (step != null && step != rowStep)
+                return null;
+            step = rowStep;
+        }
+        return lastRow.get(cols - 2).getObjects().size() + step;
+    }
+
+    /**
+     * @return The shapes of the last row's known figures, or null if a complete
+     *         row ends with a shape not seen earlier in it
+     */
+    private static Set<String> predictShapes(List<List<RavensFigure>> ravensFiguresList) {
+        int rows = ravensFiguresList.size();
+        List<RavensFigure> lastRow = ravensFiguresList.get(rows - 1);
+        int cols = lastRow.size();
+        if (rows < 2 || cols < 2)
+            return null;
+
+        for (int r = 0; r < rows - 1; r++) {
+            List<RavensFigure> row = ravensFiguresList.get(r);
+            Set<String> earlier = new HashSet<>();
+            for (int c = 0; c < cols - 1; c++)
+                earlier.addAll(shapesOf(row.get(c)));
+            if (!earlier.containsAll(shapesOf(row.get(cols - 1))))
+                return null;
+        }
+
+        Set<String> shapes = new HashSet<>();
+        for (int c = 0; c < cols - 1; c++)
+            shapes.addAll(shapesOf(lastRow.get(c)));
+        return shapes;
+    }
+
+    private static Set<String> shapesOf(RavensFigure figure) {
+        Set<String> shapes = new HashSet<>();
+        for (RavensObject object : figure.getObjects().values())
+            shapes.add(object.getAttributes().get("shape"));
+        return shapes;
+    }
+}
@@ -0,0 +1,195 @@
+package ravensproject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A RavensFigure with all of its objects compiled for fast comparison. The
+ * objects keep the iteration order of the figure's object map.
+ *
+ * Each figure also gets a 128-bit canonical hash that does not depend on the
+ * names of the figure or its objects. Objects start out labelled by the
+ * multiset of their attribute values; attributes whose values name other
+ * objects of the figure ("left-of:b", "inside:a,c") are then folded in
+ * through the labels of the objects they name, refining the labels once per
+ * object so every chain of relations is covered. Multisets are hashed by
+ * summing well-mixed terms, so neither attribute nor object order matters.
+ * Figures with the same hash are taken to be structurally identical, and
+ * ordering the objects by their final labels gives every object a canonical
+ * rank that identical figures share.
+ */
+public class CompiledFigure {
+
+    private RavensFigure figure;
+    private List<CompiledObject> objects;
+    private long canonicalHigh;
+    private long canonicalLow;
+    private int[] canonicalOrder; //object index at each rank
+    private int[] canonicalRanks; //rank of each object index
+    private SpatialRelations relations;
+
+    // Independent seeds for the two halves of the canonical hash
+    private static final long HIGH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long LOW_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    public CompiledFigure(RavensFigure figure) {
+        this.figure = figure;
+        objects = new ArrayList<>();
+        for (RavensObject object : figure.getObjects().values())
+            objects.add(new CompiledObject(object));
+        long[] highLabels = canonicalLabels(HIGH_SEED);
+        long[] lowLabels = canonicalLabels(LOW_SEED);
+        canonicalHigh = canonicalHash(highLabels, HIGH_SEED);
+        canonicalLow = canonicalHash(lowLabels, LOW_SEED);
+        rankObjects(highLabels, lowLabels);
+        relations = new SpatialRelations(objects);
+    }
+
+    public RavensFigure getFigure() {
+        return figure;
+    }
+
+    public String getName() {
+        return figure.getName();
+    }
+
+    public List<CompiledObject> getObjects() {
+        return objects;
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    public SpatialRelations getRelations() {
+        return relations;
+    }
+
+    public long getCanonicalHigh() {
+        return canonicalHigh;
+    }
+
+    public long getCanonicalLow() {
+        return canonicalLow;
+    }
+
+    /**
+     * @param other
+     * @return Whether the two figures have the same objects, attributes and
+     *         relations, whatever their names
+     */
+    public boolean sameStructure(CompiledFigure other) {
+        return canonicalHigh == other.canonicalHigh && canonicalLow == other.canonicalLow;
+    }
+
+    /**
+     * @param index an index into getObjects()
+     * @return The object's canonical rank
+     */
+    public int getCanonicalRank(int index) {
+        return canonicalRanks[index];
+    }
+
+    /**
+     * @param rank
+     * @return The index into getObjects() of the object with the canonical rank
+     */
+    public int getObjectIndex(int rank) {
+        return canonicalOrder[rank];
+    }
+
+    /**
+     * This method computes the refined object labels for one 64-bit half of
+     * the canonical hash.
+     *
+     * @param seed
+     * @return The label of each object, indexed like getObjects()
+     */
+    private long[] canonicalLabels(long seed) {
+        int size = objects.size();
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            indexes.put(objects.get(i).getName(), i);
+
+        // Plain attributes give the initial labels; relations are kept as (attribute, object) edges
+        long[] labels = new long[size];
+        List<List<long[]>> edges = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            List<long[]> objectEdges = new ArrayList<>();
+            for (Map.Entry<String, String> attribute : objects.get(i).getObject().getAttributes().entrySet()) {
+                long key = hash(attribute.getKey(), seed);
+                String[] targets = attribute.getValue().split(",");
+                if (allNamed(targets, indexes)) {
+                    for (String target : targets)
+                        objectEdges.add(new long[]{key, indexes.get(target)});
+                } else
+                    labels[i] += mix(key * 31 + hash(attribute.getValue(), seed));
+            }
+            edges.add(objectEdges);
+        }
+
+        for (int round = 0; round < size; round++) {
+            long[] refined = new long[size];
+            for (int i = 0; i < size; i++) {
+                long neighbours = 0;
+                for (long[] edge : edges.get(i))
+                    neighbours += mix(edge[0] ^ labels[(int) edge[1]] * 0xFF51AFD7ED558CCDL);
+                refined[i] = mix(labels[i] * 31 + neighbours);
+            }
+            labels = refined;
+        }
+        return labels;
+    }
+
+    private static long canonicalHash(long[] labels, long seed) {
+        long hash = mix(seed + labels.length);
+        for (long label : labels)
+            hash += mix(label);
+        return mix(hash);
+    }
+
+    // Objects with equal labels are interchangeable, so they keep their figure order
+    private void rankObjects(long[] highLabels, long[] lowLabels) {
+        int size = objects.size();
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> highLabels[a] != highLabels[b]
+                ? Long.compare(highLabels[a], highLabels[b])
+                : Long.compare(lowLabels[a], lowLabels[b]));
+
+        canonicalOrder = new int[size];
+        canonicalRanks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            canonicalOrder[rank] = order[rank];
+            canonicalRanks[order[rank]] = rank;
+        }
+    }
+
+    private static boolean allNamed(String[] names, Map<String, Integer> indexes) {
+        for (String name : names)
+            if (!indexes.containsKey(name))
+                return false;
+        return true;
+    }
+
+    private static long hash(String value, long seed) {
+        long hash = seed;
+        for (int i = 0; i < value.length(); i++)
+            hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+        return mix(hash);
+    }
+
+    // The 64-bit finalizer of MurmurHash3
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
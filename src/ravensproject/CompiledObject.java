@@ -0,0 +1,71 @@
+package ravensproject;
+
+import java.util.HashMap;
+
+/**
+ * A RavensObject whose scored attributes have been compiled into packed codes
+ * by the AttributeSchema. If any of them could not be encoded the object is
+ * left uncompiled and is compared through its attribute strings instead.
+ * The number of objects named by each of its spatial relations is counted
+ * once here as well.
+ */
+public class CompiledObject {
+
+    private RavensObject object;
+    private long codes;
+    private boolean compiled;
+    private int[] relationCounts;
+
+    public CompiledObject(RavensObject object) {
+        this.object = object;
+        compiled = true;
+
+        HashMap<String, String> attributes = object.getAttributes();
+        try {
+            for (int field = 0; field < AttributeSchema.NAMES.length; field++) {
+                String value = attributes.get(AttributeSchema.NAMES[field]);
+                if (value == null)
+                    continue;
+
+                long code = AttributeSchema.intern(field, value);
+                if (code == 0) {
+                    compiled = false;
+                    break;
+                }
+                codes |= code << (field * 8);
+            }
+        } catch (NumberFormatException ex) {
+            compiled = false;
+        }
+
+        relationCounts = new int[SpatialRelations.NAMES.length];
+        for (int relation = 0; relation < relationCounts.length; relation++) {
+            String targets = attributes.get(SpatialRelations.NAMES[relation]);
+            relationCounts[relation] = targets == null ? -1 : targets.split(",").length;
+        }
+    }
+
+    public RavensObject getObject() {
+        return object;
+    }
+
+    public String getName() {
+        return object.getName();
+    }
+
+    public long getCodes() {
+        return codes;
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * @param relation an index into SpatialRelations.NAMES
+     * @return The number of objects the relation names, or -1 if the object does not have it
+     */
+    public int getRelationCount(int relation) {
+        return relationCounts[relation];
+    }
+}
@@ -0,0 +1,217 @@
+package ravensproject;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the whole Problems/ text tree into a single binary corpus file that
+ * CorpusFile can memory-map. Every string (set, problem, figure and object
+ * names, attribute keys and values) is stored once in a dictionary and
+ * referred to by id, and offset tables locate every set and problem.
+ *
+ * Layout, big-endian, version CorpusFile.VERSION:
+ * <pre>
+ * header       int magic, int version, int stringCount, int setCount,
+ *              long stringOffsetsPos, long stringDataPos, long setTablePos
+ * strings      int[stringCount + 1] offsets into the UTF-8 string data
+ * set table    per set: int nameId, int problemCount, long problemIndexPos
+ * indices      per set: long[problemCount] problem record positions
+ * records      per problem: int nameId, int typeId, int correctAnswer,
+ *              byte flags (1 = visual, 2 = verbal), int figureCount,
+ *              figures: int nameId, int objectCount,
+ *              objects: int nameId, int attributeCount,
+ *              attributes: int keyId, int valueId
+ * </pre>
+ *
+ * Usage: run from the directory that holds Problems/, optionally passing the
+ * output path (default Problems/corpus.rpmc).
+ */
+public class CorpusCompiler {
+
+    private Map<String, Integer> strings;
+
+    public CorpusCompiler() {
+        strings = new LinkedHashMap<>();
+    }
+
+    public static void main(String[] args) throws IOException {
+        File output = new File(args.length > 0 ? args[0] : "Problems" + File.separator + "corpus.rpmc");
+        long start = System.nanoTime();
+        int problems = new CorpusCompiler().compile(StreamingProblemSet.readSetNames(), output);
+        System.out.printf("Compiled %d problems into %s in %.1f ms%n",
+                problems, output, (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * This method compiles the given problem sets into a corpus file. Problem
+     * records are streamed to a temporary file first, so only the dictionary
+     * and the offset tables are held in memory.
+     *
+     * @param setNames
+     * @param output
+     * @return The number of problems compiled
+     * @throws IOException if a problem cannot be read or the corpus cannot be written
+     */
+    public int compile(List<String> setNames, File output) throws IOException {
+        File records = new File(output.getPath() + ".tmp");
+        List<Integer> setNameIds = new ArrayList<>();
+        List<long[]> setIndices = new ArrayList<>();
+        int problemCount = 0;
+
+        try {
+            try (CountingOutput out = new CountingOutput(records)) {
+                for (String setName : setNames) {
+                    setNameIds.add(id(setName));
+                    List<Long> positions = new ArrayList<>();
+                    for (RavensProblem problem : new StreamingProblemSet(setName)) {
+                        positions.add(out.size());
+                        writeProblem(out.data, problem);
+                        problemCount++;
+                    }
+                    long[] index = new long[positions.size()];
+                    for (int i = 0; i < index.length; i++)
+                        index[i] = positions.get(i);
+                    setIndices.add(index);
+                }
+            }
+
+            writeCorpus(output, records, setNameIds, setIndices);
+        } finally {
+            records.delete();
+        }
+
+        return problemCount;
+    }
+
+    private void writeProblem(DataOutputStream out, RavensProblem problem) throws IOException {
+        out.writeInt(id(problem.getName()));
+        out.writeInt(id(problem.getProblemType()));
+        out.writeInt(problem.checkAnswer(0));
+        out.writeByte((problem.hasVisual() ? 1 : 0) | (problem.hasVerbal() ? 2 : 0));
+
+        // Visual-only problems get their empty figures back from ProblemLoader
+        HashMap<String, RavensFigure> figures = problem.hasVerbal() ? problem.getFigures() : new HashMap<>();
+        out.writeInt(figures.size());
+        for (RavensFigure figure : figures.values()) {
+            out.writeInt(id(figure.getName()));
+            out.writeInt(figure.getObjects().size());
+            for (RavensObject object : figure.getObjects().values()) {
+                out.writeInt(id(object.getName()));
+                out.writeInt(object.getAttributes().size());
+                for (Map.Entry<String, String> attribute : object.getAttributes().entrySet()) {
+                    out.writeInt(id(attribute.getKey()));
+                    out.writeInt(id(attribute.getValue()));
+                }
+            }
+        }
+    }
+
+    private void writeCorpus(File output, File records, List<Integer> setNameIds,
+                             List<long[]> setIndices) throws IOException {
+
+        List<byte[]> encoded = new ArrayList<>();
+        for (String string : strings.keySet())
+            encoded.add(string.getBytes(StandardCharsets.UTF_8));
+
+        long headerSize = 4 + 4 + 4 + 4 + 8 + 8 + 8;
+        long stringOffsetsPos = headerSize;
+        long stringDataPos = stringOffsetsPos + 4L * (encoded.size() + 1);
+        long stringDataSize = 0;
+        for (byte[] bytes : encoded)
+            stringDataSize += bytes.length;
+        long setTablePos = stringDataPos + stringDataSize;
+        long indexPos = setTablePos + 16L * setNameIds.size();
+        long recordsPos = indexPos;
+        for (long[] index : setIndices)
+            recordsPos += 8L * index.length;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(CorpusFile.MAGIC);
+            out.writeInt(CorpusFile.VERSION);
+            out.writeInt(encoded.size());
+            out.writeInt(setNameIds.size());
+            out.writeLong(stringOffsetsPos);
+            out.writeLong(stringDataPos);
+            out.writeLong(setTablePos);
+
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                out.writeInt(offset);
+                offset += bytes.length;
+            }
+            out.writeInt(offset);
+            for (byte[] bytes : encoded)
+                out.write(bytes);
+
+            long problemIndexPos = indexPos;
+            for (int i = 0; i < setNameIds.size(); i++) {
+                out.writeInt(setNameIds.get(i));
+                out.writeInt(setIndices.get(i).length);
+                out.writeLong(problemIndexPos);
+                problemIndexPos += 8L * setIndices.get(i).length;
+            }
+            for (long[] index : setIndices)
+                for (long position : index)
+                    out.writeLong(recordsPos + position);
+
+            try (InputStream in = new FileInputStream(records)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) > 0)
+                    out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    private int id(String string) {
+        Integer id = strings.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.put(string, id);
+        }
+        return id;
+    }
+
+    /**
+     * A data output stream over a file that tracks how many bytes it has
+     * written as a long (DataOutputStream.size() saturates at 2 GB).
+     */
+    private static class CountingOutput extends FilterOutputStream {
+
+        private DataOutputStream data;
+        private long count;
+
+        CountingOutput(File file) throws IOException {
+            super(new BufferedOutputStream(new FileOutputStream(file)));
+            data = new DataOutputStream(this);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A binary corpus written by CorpusCompiler, opened with a single memory map.
+ * Opening only reads the header; problems, figures and objects are built from
+ * the mapped bytes when a problem is requested, and dictionary strings are
+ * decoded the first time they are used. Nothing else is kept, so problems can
+ * be garbage collected once they have been solved.
+ *
+ * Reads use absolute positions only, so a CorpusFile can be shared between
+ * threads. Corpora are limited to 2 GB, the size of one mapping.
+ */
+public class CorpusFile implements AutoCloseable {
+
+    public static final int MAGIC = 0x52504D43; //"RPMC"
+    public static final int VERSION = 1;
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int stringCount;
+    private int setCount;
+    private long stringOffsetsPos;
+    private long stringDataPos;
+    private long setTablePos;
+    private AtomicReferenceArray<String> decodedStrings;
+
+    /**
+     * This method maps a corpus file and checks its header.
+     *
+     * @param file
+     * @throws IOException if the file cannot be mapped or is not a corpus of this version
+     */
+    public CorpusFile(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(file + ": corpus is larger than 2 GB");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.limit() < 40 || buffer.getInt(0) != MAGIC)
+                throw new IOException(file + ": not a compiled problem corpus");
+            if (buffer.getInt(4) != VERSION)
+                throw new IOException(file + ": corpus version " + buffer.getInt(4)
+                        + " is not supported (expected " + VERSION + ")");
+
+            stringCount = buffer.getInt(8);
+            setCount = buffer.getInt(12);
+            stringOffsetsPos = buffer.getLong(16);
+            stringDataPos = buffer.getLong(24);
+            setTablePos = buffer.getLong(32);
+            decodedStrings = new AtomicReferenceArray<>(stringCount);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public int getSetCount() {
+        return setCount;
+    }
+
+    public String getSetName(int set) {
+        return string(buffer.getInt(setEntry(set)));
+    }
+
+    public int getProblemCount(int set) {
+        return buffer.getInt(setEntry(set) + 4);
+    }
+
+    /**
+     * This method builds a problem from its record in the corpus.
+     *
+     * @param set index of the set
+     * @param problem index of the problem within the set
+     * @return The problem
+     */
+    public RavensProblem getProblem(int set, int problem) {
+        if (problem < 0 || problem >= getProblemCount(set))
+            throw new IndexOutOfBoundsException("problem " + problem);
+
+        String setName = getSetName(set);
+        long indexPos = buffer.getLong(setEntry(set) + 8);
+        int pos = (int) buffer.getLong((int) (indexPos + 8L * problem));
+
+        String problemName = string(buffer.getInt(pos));
+        String problemType = string(buffer.getInt(pos + 4));
+        int correctAnswer = buffer.getInt(pos + 8);
+        byte flags = buffer.get(pos + 12);
+        int figureCount = buffer.getInt(pos + 13);
+        pos += 17;
+
+        RavensProblem ravensProblem = new RavensProblem(problemName, problemType, correctAnswer,
+                (flags & 1) != 0, (flags & 2) != 0);
+        if ((flags & 2) == 0) {
+            ProblemLoader.addVisualFigures(ravensProblem, setName);
+            return ravensProblem;
+        }
+
+        for (int f = 0; f < figureCount; f++) {
+            RavensFigure figure = new RavensFigure(string(buffer.getInt(pos)), problemName, setName);
+            int objectCount = buffer.getInt(pos + 4);
+            pos += 8;
+            for (int o = 0; o < objectCount; o++) {
+                RavensObject object = new RavensObject(string(buffer.getInt(pos)));
+                int attributeCount = buffer.getInt(pos + 4);
+                pos += 8;
+                for (int a = 0; a < attributeCount; a++) {
+                    object.getAttributes().put(string(buffer.getInt(pos)), string(buffer.getInt(pos + 4)));
+                    pos += 8;
+                }
+                figure.getObjects().put(object.getName(), object);
+            }
+            ravensProblem.getFigures().put(figure.getName(), figure);
+        }
+
+        return ravensProblem;
+    }
+
+    /**
+     * This method returns the problems of a set, built one at a time as they
+     * are iterated.
+     *
+     * @param set index of the set
+     * @return The problems of the set
+     */
+    public Iterable<RavensProblem> problems(int set) {
+        int count = getProblemCount(set);
+        return () -> new Iterator<RavensProblem>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public RavensProblem next() {
+                if (next >= count)
+                    throw new NoSuchElementException();
+                return getProblem(set, next++);
+            }
+        };
+    }
+
+    private int setEntry(int set) {
+        if (set < 0 || set >= setCount)
+            throw new IndexOutOfBoundsException("set " + set);
+        return (int) (setTablePos + 16L * set);
+    }
+
+    /**
+     * This method decodes a dictionary string, caching it for later use.
+     *
+     * @param id
+     * @return The string
+     */
+    private String string(int id) {
+        String string = decodedStrings.get(id);
+        if (string == null) {
+            int start = buffer.getInt((int) (stringOffsetsPos + 4L * id));
+            int end = buffer.getInt((int) (stringOffsetsPos + 4L * (id + 1)));
+            byte[] bytes = new byte[end - start];
+            buffer.get((int) (stringDataPos + start), bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            decodedStrings.set(id, string);
+        }
+        return string;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
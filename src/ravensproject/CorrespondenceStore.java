@@ -0,0 +1,362 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A memory-mapped file of object correspondences found by the
+ * SemanticNetwork, kept across runs. Entries are keyed by the canonical
+ * hashes of an ordered figure pair (see CompiledFigure), the matching mode,
+ * whether spatial relations break ties and SemanticNetwork.RULES_VERSION, so a figure pair seen in an earlier run
+ * or under other names gets its mapping back without searching again.
+ * Mappings are stored by canonical object rank and turned back into object
+ * indexes for the figures at hand.
+ *
+ * The file is a header followed by append-only records; a record becomes
+ * visible once its length, written last, is non-zero. The whole capacity is
+ * mapped up front, lookups go through an in-memory index of record offsets
+ * and read with absolute positions only, so any number of threads can read
+ * while one appends. When the file is opened, records of other rules
+ * versions and older copies of a key are compacted away, and if the live
+ * records take more than half of the capacity only the newest half is kept.
+ * Once the file is full, new mappings are no longer recorded. A second
+ * process opening the same file while it is in use gets a read-only store.
+ *
+ * Files are limited to 2 GB, the size of one mapping.
+ */
+public class CorrespondenceStore implements AutoCloseable {
+
+    public static final int MAGIC = 0x52564353; //"RVCS"
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 4 + 4 + 4 * 8 + 2;
+
+    // Rank stored for an added or deleted object
+    private static final short NONE = -1;
+
+    private static CorrespondenceStore shared;
+    private static boolean sharedOpened;
+
+    private File file;
+    private int capacity;
+    private FileChannel channel;
+    private FileLock lock;
+    private MappedByteBuffer buffer;
+    private Map<Key, Integer> index;
+    private int tail;
+    private boolean full;
+
+    /**
+     * This method maps a store file, creating it if needed, and compacts it.
+     *
+     * @param file
+     * @param capacity the largest size the file may grow to, in bytes
+     * @throws IOException if the file cannot be mapped or is not a store of this version
+     */
+    public CorrespondenceStore(File file, int capacity) throws IOException {
+        this.file = file;
+        this.capacity = Math.max(capacity, HEADER_SIZE + RECORD_HEADER_SIZE);
+        index = new ConcurrentHashMap<>();
+
+        if (file.exists() && file.length() > 0)
+            compact(file, this.capacity);
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ex) {
+            lock = null;
+        }
+        buffer = channel.map(lock != null ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                0, lock != null ? this.capacity : Math.min(channel.size(), this.capacity));
+        full = lock == null;
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) == 0) {
+            if (lock == null)
+                throw new IOException(file + ": store is being created by another process");
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, SemanticNetwork.RULES_VERSION);
+            buffer.putInt(0, MAGIC);
+        } else if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            close();
+            throw new IOException(file + ": not a correspondence store of version " + VERSION);
+        }
+
+        tail = HEADER_SIZE;
+        int length;
+        while (tail + 4 <= buffer.limit() && (length = buffer.getInt(tail)) > 0
+                && tail + length <= buffer.limit()) {
+            index.put(readKey(buffer, tail), tail);
+            tail += length;
+        }
+    }
+
+    /**
+     * This method returns the store named by -Dravens.correspondenceStore,
+     * opening it the first time it is asked for. Its size is capped by
+     * -Dravens.correspondenceStoreMb (default 64).
+     *
+     * @return The shared store, or null if none is configured or it cannot be opened
+     */
+    public static synchronized CorrespondenceStore shared() {
+        if (!sharedOpened) {
+            sharedOpened = true;
+            String path = System.getProperty("ravens.correspondenceStore");
+            if (path != null) {
+                long megabytes = Math.min(Long.getLong("ravens.correspondenceStoreMb", 64L), 2047L);
+                try {
+                    shared = new CorrespondenceStore(new File(path), (int) (megabytes * 1024 * 1024));
+                    CorrespondenceStore store = shared;
+                    Log.info(() -> "Loaded " + store.size() + " correspondences from " + path);
+                    Runtime.getRuntime().addShutdownHook(new Thread(store::close, "correspondence-store"));
+                } catch (IOException ex) {
+                    Log.warn(() -> "Unable to open correspondence store: " + ex);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * This method looks up the mapping stored for a figure pair.
+     *
+     * @param figure1
+     * @param figure2
+     * @param matchMode
+     * @param preserveRelations whether the mapping was chosen to keep spatial relations
+     * @return The column chosen for each row of the padded score matrix, an
+     *         empty array if no mapping scored above zero, or null if the pair
+     *         is not in the store
+     */
+    public int[] get(CompiledFigure figure1, CompiledFigure figure2, MatchMode matchMode,
+                     boolean preserveRelations) {
+        Integer offset = index.get(new Key(figure1, figure2, matchMode, preserveRelations));
+        if (offset == null)
+            return null;
+
+        int pairs = buffer.getShort(offset + RECORD_HEADER_SIZE - 2);
+        if (pairs == 0)
+            return new int[0];
+
+        // Padded rows and columns are interchangeable, so they are handed out in order
+        int[] mapping = new int[pairs];
+        int paddedRow = figure1.size();
+        int paddedColumn = figure2.size();
+        for (int i = 0; i < pairs; i++) {
+            int position = offset + RECORD_HEADER_SIZE + i * 4;
+            short rank1 = buffer.getShort(position);
+            short rank2 = buffer.getShort(position + 2);
+            int row = rank1 == NONE ? paddedRow++ : figure1.getObjectIndex(rank1);
+            mapping[row] = rank2 == NONE ? paddedColumn++ : figure2.getObjectIndex(rank2);
+        }
+        return mapping;
+    }
+
+    /**
+     * This method records the mapping found for a figure pair. Nothing is
+     * recorded once the store is full.
+     *
+     * @param figure1
+     * @param figure2
+     * @param matchMode
+     * @param preserveRelations whether the mapping was chosen to keep spatial relations
+     * @param mapping the column chosen for each row of the padded score
+     *                matrix, or null if no mapping scored above zero
+     */
+    public synchronized void put(CompiledFigure figure1, CompiledFigure figure2, MatchMode matchMode,
+                                 boolean preserveRelations, int[] mapping) {
+        Key key = new Key(figure1, figure2, matchMode, preserveRelations);
+        if (full || index.containsKey(key))
+            return;
+
+        int pairs = mapping == null ? 0 : mapping.length;
+        int length = RECORD_HEADER_SIZE + pairs * 4;
+        if (tail + length + 4 > capacity) {
+            full = true;
+            Log.info(() -> "Correspondence store " + file + " is full");
+            return;
+        }
+
+        buffer.putInt(tail + 4, key.tag);
+        buffer.putLong(tail + 8, key.high1);
+        buffer.putLong(tail + 16, key.low1);
+        buffer.putLong(tail + 24, key.high2);
+        buffer.putLong(tail + 32, key.low2);
+        buffer.putShort(tail + RECORD_HEADER_SIZE - 2, (short) pairs);
+        for (int i = 0; i < pairs; i++) {
+            int position = tail + RECORD_HEADER_SIZE + i * 4;
+            buffer.putShort(position, i < figure1.size() ? (short) figure1.getCanonicalRank(i) : NONE);
+            buffer.putShort(position + 2, mapping[i] < figure2.size() ? (short) figure2.getCanonicalRank(mapping[i]) : NONE);
+        }
+        // The length goes in last so a half-written record is never read back
+        buffer.putInt(tail, length);
+
+        index.put(key, tail);
+        tail += length;
+    }
+
+    /**
+     * @return The number of figure pairs in the store
+     */
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (buffer != null && lock != null)
+                buffer.force();
+            if (lock != null)
+                lock.release();
+            channel.close();
+        } catch (IOException ex) {
+            Log.warn(() -> "Unable to close correspondence store: " + ex);
+        }
+        full = true;
+    }
+
+    /**
+     * This method rewrites a store file with only its live records: those of
+     * the current rules version, one per key. If they take more than half of
+     * the capacity, only the newest records that fit in half are kept. The
+     * file is left alone when it is in use by another process or has nothing
+     * to drop.
+     *
+     * @param file
+     * @param capacity
+     * @throws IOException if the file cannot be read or replaced
+     */
+    public static void compact(File file, int capacity) throws IOException {
+        ByteBuffer old;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            old = in.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(in.size(), Integer.MAX_VALUE));
+        }
+        int end = old.limit();
+        if (end < HEADER_SIZE || old.getInt(0) != MAGIC || old.getInt(4) != VERSION)
+            return;
+
+        // Later copies of a key replace earlier ones, and keep the position of the newest
+        Map<Key, int[]> live = new LinkedHashMap<>();
+        int records = 0;
+        int position = HEADER_SIZE;
+        int length;
+        while (position + 4 <= end && (length = old.getInt(position)) > 0 && position + length <= end) {
+            records++;
+            Key key = readKey(old, position);
+            if (key.tag >>> 8 == SemanticNetwork.RULES_VERSION) {
+                live.remove(key);
+                live.put(key, new int[]{position, length});
+            }
+            position += length;
+        }
+
+        List<int[]> kept = new ArrayList<>(live.values());
+        int size = HEADER_SIZE;
+        for (int[] record : kept)
+            size += record[1];
+        int start = 0;
+        while (size > capacity / 2 && start < kept.size())
+            size -= kept.get(start++)[1];
+        if (start == 0 && kept.size() == records && old.getInt(8) == SemanticNetwork.RULES_VERSION)
+            return;
+
+        ByteBuffer compacted = ByteBuffer.allocate(size);
+        compacted.putInt(MAGIC).putInt(VERSION).putInt(SemanticNetwork.RULES_VERSION).putInt(0);
+        for (int[] record : kept.subList(start, kept.size()))
+            compacted.put(old.slice(record[0], record[1]));
+
+        File temp = new File(file.getPath() + ".compact");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            FileLock inUse = tryLock(file);
+            if (inUse == null) {
+                Files.deleteIfExists(temp.toPath());
+                return;
+            }
+            try {
+                compacted.flip();
+                while (compacted.hasRemaining())
+                    out.write(compacted);
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                inUse.release();
+                inUse.channel().close();
+            }
+        }
+        int dropped = records - (kept.size() - start);
+        Log.info(() -> "Compacted correspondence store " + file + ", dropped " + dropped + " records");
+    }
+
+    private static FileLock tryLock(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock == null)
+                channel.close();
+            return lock;
+        } catch (OverlappingFileLockException ex) {
+            channel.close();
+            return null;
+        }
+    }
+
+    private static Key readKey(ByteBuffer buffer, int position) {
+        return new Key(buffer.getInt(position + 4), buffer.getLong(position + 8), buffer.getLong(position + 16),
+                buffer.getLong(position + 24), buffer.getLong(position + 32));
+    }
+
+    /**
+     * The canonical hashes of an ordered figure pair, with the rules version,
+     * matching mode and tie-break setting packed into a tag.
+     */
+    private static class Key {
+
+        private int tag;
+        private long high1, low1, high2, low2;
+
+        Key(CompiledFigure figure1, CompiledFigure figure2, MatchMode matchMode, boolean preserveRelations) {
+            this(SemanticNetwork.RULES_VERSION << 8 | (preserveRelations ? 0x80 : 0) | matchMode.ordinal(),
+                    figure1.getCanonicalHigh(), figure1.getCanonicalLow(),
+                    figure2.getCanonicalHigh(), figure2.getCanonicalLow());
+        }
+
+        Key(int tag, long high1, long low1, long high2, long low2) {
+            this.tag = tag;
+            this.high1 = high1;
+            this.low1 = low1;
+            this.high2 = high2;
+            this.low2 = low2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return tag == other.tag && high1 == other.high1 && low1 == other.low1
+                    && high2 == other.high2 && low2 == other.low2;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (high1 ^ (low1 >>> 32) ^ high2 * 31 ^ (low2 >>> 16)) ^ tag;
+        }
+    }
+}
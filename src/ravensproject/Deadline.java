@@ -0,0 +1,64 @@
+package ravensproject;
+
+/**
+ * The time budget of one problem. Work checks it cooperatively:
+ * once the budget is spent (isExpired) searches stop with the best result
+ * they have found and the remaining work switches to its cheapest form, and
+ * once the grace period after it is spent too (isOverrun) loops stop
+ * altogether and the solve answers from whatever it has scored.
+ *
+ * Deadlines compare System.nanoTime() values, so a check costs one call.
+ */
+public class Deadline {
+
+    /**
+     * A deadline that never expires.
+     */
+    public static final Deadline NONE = new Deadline();
+
+    private boolean bounded;
+    private long expiresAt;
+    private long overrunAt;
+
+    private Deadline() {
+        bounded = false;
+        expiresAt = Long.MAX_VALUE;
+        overrunAt = Long.MAX_VALUE;
+    }
+
+    /**
+     * @param budgetNanos time until the deadline expires
+     * @param graceNanos further time allowed for wrapping up before it is overrun
+     */
+    public Deadline(long budgetNanos, long graceNanos) {
+        bounded = true;
+        long now = System.nanoTime();
+        expiresAt = now + budgetNanos;
+        overrunAt = expiresAt + graceNanos;
+    }
+
+    /**
+     * @return Whether the budget is spent
+     */
+    public boolean isExpired() {
+        return bounded && System.nanoTime() - expiresAt >= 0;
+    }
+
+    /**
+     * @return Whether the budget and the grace period after it are spent
+     */
+    public boolean isOverrun() {
+        return bounded && System.nanoTime() - overrunAt >= 0;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * @return The System.nanoTime() at which the budget is spent, Long.MAX_VALUE if never
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+}
@@ -0,0 +1,305 @@
+package ravensproject;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ * A black-and-white image of a figure packed one bit per pixel into a long[]
+ * (set bits are dark pixels). Each row starts on a fresh word, so rows can be
+ * processed word by word. Comparisons between two bitmaps of the same size
+ * work 64 pixels at a time with AND/OR/XOR and a bit count, through the
+ * SimilarityKernels picked for this JVM.
+ */
+public class FigureBitmap {
+
+    public static final int DEFAULT_THRESHOLD = 128;
+
+    // Decoders reuse their buffers, so each thread gets its own
+    private static final ThreadLocal<PngBitmapDecoder> DECODERS = ThreadLocal.withInitial(PngBitmapDecoder::new);
+
+    private static final SimilarityKernels KERNELS = SimilarityKernels.get();
+
+    private int width;
+    private int height;
+    private int wordsPerRow;
+    private long[] words;
+
+    public FigureBitmap(int width, int height) {
+        this.width = width;
+        this.height = height;
+        wordsPerRow = (width + 63) >>> 6;
+        words = new long[wordsPerRow * height];
+    }
+
+    /**
+     * This method loads a figure's PNG and binarizes it, decoding it straight
+     * into a bitmap when possible and through ImageIO otherwise.
+     *
+     * @param path
+     * @return The bitmap of the image
+     * @throws IOException if the image cannot be read
+     */
+    public static FigureBitmap load(String path) throws IOException {
+        FigureBitmap bitmap = DECODERS.get().decode(path, DEFAULT_THRESHOLD);
+        if (bitmap != null)
+            return bitmap;
+        return loadWithImageIO(path);
+    }
+
+    /**
+     * This method loads any image ImageIO can read and binarizes it.
+     *
+     * @param path
+     * @return The bitmap of the image
+     * @throws IOException if the image cannot be read
+     */
+    public static FigureBitmap loadWithImageIO(String path) throws IOException {
+        BufferedImage image = ImageIO.read(new File(path));
+        if (image == null)
+            throw new IOException(path + ": not a readable image");
+        return fromImage(image, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * This method binarizes an image: a pixel is dark when its luminance is
+     * below the threshold. Transparent pixels count as white.
+     *
+     * @param image
+     * @param threshold luminance from 0 to 255
+     * @return The bitmap of the image
+     */
+    public static FigureBitmap fromImage(BufferedImage image, int threshold) {
+        FigureBitmap bitmap = new FigureBitmap(image.getWidth(), image.getHeight());
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, image.getWidth(), 1, row, 0, image.getWidth());
+            for (int x = 0; x < row.length; x++) {
+                int argb = row[x];
+                int alpha = argb >>> 24;
+                int luminance = (299 * ((argb >> 16) & 0xFF) + 587 * ((argb >> 8) & 0xFF)
+                        + 114 * (argb & 0xFF)) / 1000;
+                if (alpha >= 128 && luminance < threshold)
+                    bitmap.set(x, y);
+            }
+        }
+        return bitmap;
+    }
+
+    public void set(int x, int y) {
+        words[y * wordsPerRow + (x >>> 6)] |= 1L << (x & 63);
+    }
+
+    public boolean get(int x, int y) {
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * @return The packed pixels; bits past the width of a row are always zero
+     */
+    public long[] getWords() {
+        return words;
+    }
+
+    /**
+     * @return One byte per pixel, row after row: 255 (as an unsigned byte) for dark, 0 for light
+     */
+    public byte[] toPixels() {
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * wordsPerRow;
+            for (int x = 0; x < width; x++)
+                if ((words[rowStart + (x >>> 6)] & (1L << (x & 63))) != 0)
+                    pixels[y * width + x] = (byte) 0xFF;
+        }
+        return pixels;
+    }
+
+    public boolean sameSize(FigureBitmap other) {
+        return width == other.width && height == other.height;
+    }
+
+    public int pixelCount() {
+        return width * height;
+    }
+
+    public int darkCount() {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    public double darkRatio() {
+        return (double) darkCount() / pixelCount();
+    }
+
+    /**
+     * @param other a bitmap of the same size
+     * @return The number of pixels that differ (Hamming distance)
+     */
+    public int xorCount(FigureBitmap other) {
+        checkSize(other);
+        return KERNELS.xorCount(words, other.words);
+    }
+
+    /**
+     * This method counts the pixels that differ like xorCount, but gives up as
+     * soon as the running count, checked after every row, exceeds the limit.
+     *
+     * @param other a bitmap of the same size
+     * @param limit the largest distance the caller is still interested in
+     * @return The Hamming distance if it is at most limit, otherwise some value above limit
+     */
+    public int hammingWithin(FigureBitmap other, int limit) {
+        checkSize(other);
+        int count = 0;
+        for (int rowStart = 0; rowStart < words.length; rowStart += wordsPerRow) {
+            for (int i = rowStart; i < rowStart + wordsPerRow; i++)
+                count += Long.bitCount(words[i] ^ other.words[i]);
+            if (count > limit)
+                return count;
+        }
+        return count;
+    }
+
+    /**
+     * @param other a bitmap of the same size
+     * @return The number of pixels dark in both bitmaps
+     */
+    public int andCount(FigureBitmap other) {
+        checkSize(other);
+        return KERNELS.andCount(words, other.words);
+    }
+
+    /**
+     * @param other a bitmap of the same size
+     * @return The number of pixels dark in either bitmap
+     */
+    public int orCount(FigureBitmap other) {
+        checkSize(other);
+        return KERNELS.orCount(words, other.words);
+    }
+
+    /**
+     * @param other a bitmap of the same size
+     * @return The number of pixels dark in this bitmap but not in the other
+     */
+    public int andNotCount(FigureBitmap other) {
+        checkSize(other);
+        return KERNELS.andNotCount(words, other.words);
+    }
+
+    /**
+     * @param other a bitmap of the same size
+     * @return The intersection over union of the dark pixels, 1 for two blank bitmaps
+     */
+    public double jaccard(FigureBitmap other) {
+        int union = orCount(other);
+        return union == 0 ? 1.0 : (double) andCount(other) / union;
+    }
+
+    /**
+     * This method computes the Tversky similarity of this bitmap (as the
+     * prototype) to the other. alpha weighs pixels only in this bitmap and
+     * beta pixels only in the other; alpha = beta = 1 gives Jaccard, and
+     * alpha = 1, beta = 0 the share of this bitmap's dark pixels the other
+     * keeps.
+     *
+     * @param other a bitmap of the same size
+     * @param alpha
+     * @param beta
+     * @return The similarity from 0 to 1, 1 when nothing is weighed
+     */
+    public double tversky(FigureBitmap other, double alpha, double beta) {
+        int common = andCount(other);
+        double denominator = common + alpha * andNotCount(other) + beta * other.andNotCount(this);
+        return denominator == 0 ? 1.0 : common / denominator;
+    }
+
+    public FigureBitmap xor(FigureBitmap other) {
+        checkSize(other);
+        FigureBitmap result = new FigureBitmap(width, height);
+        for (int i = 0; i < words.length; i++)
+            result.words[i] = words[i] ^ other.words[i];
+        return result;
+    }
+
+    public FigureBitmap and(FigureBitmap other) {
+        checkSize(other);
+        FigureBitmap result = new FigureBitmap(width, height);
+        for (int i = 0; i < words.length; i++)
+            result.words[i] = words[i] & other.words[i];
+        return result;
+    }
+
+    public FigureBitmap or(FigureBitmap other) {
+        checkSize(other);
+        FigureBitmap result = new FigureBitmap(width, height);
+        for (int i = 0; i < words.length; i++)
+            result.words[i] = words[i] | other.words[i];
+        return result;
+    }
+
+    /**
+     * @return The bitmap turned a quarter clockwise; width and height swap
+     */
+    public FigureBitmap rotate90() {
+        FigureBitmap result = new FigureBitmap(height, width);
+        for (int y = 0; y < height; y++) {
+            int rowStart = y * wordsPerRow;
+            for (int x = 0; x < width; x++)
+                if ((words[rowStart + (x >>> 6)] & (1L << (x & 63))) != 0)
+                    result.set(height - 1 - y, x);
+        }
+        return result;
+    }
+
+    /**
+     * @return The bitmap flipped left to right
+     */
+    public FigureBitmap mirrorHorizontal() {
+        FigureBitmap result = new FigureBitmap(width, height);
+        // Reversing a row's words leaves the row's padding bits at the start, shift them back out
+        int padding = wordsPerRow * 64 - width;
+        for (int rowStart = 0; rowStart < words.length; rowStart += wordsPerRow) {
+            for (int i = 0; i < wordsPerRow; i++) {
+                int source = rowStart + wordsPerRow - 1 - i;
+                long word = Long.reverse(words[source]) >>> padding;
+                if (padding > 0 && source > rowStart)
+                    word |= Long.reverse(words[source - 1]) << (64 - padding);
+                result.words[rowStart + i] = word;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The bitmap flipped top to bottom
+     */
+    public FigureBitmap mirrorVertical() {
+        FigureBitmap result = new FigureBitmap(width, height);
+        for (int y = 0; y < height; y++)
+            System.arraycopy(words, y * wordsPerRow, result.words, (height - 1 - y) * wordsPerRow, wordsPerRow);
+        return result;
+    }
+
+    private void checkSize(FigureBitmap other) {
+        if (!sameSize(other))
+            throw new IllegalArgumentException("bitmaps differ in size: " + width + "x" + height
+                    + " and " + other.width + "x" + other.height);
+    }
+}
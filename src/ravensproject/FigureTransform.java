@@ -0,0 +1,37 @@
+package ravensproject;
+
+/**
+ * The rotations and reflections a figure can undergo between two cells of a
+ * matrix, the image counterpart of the angle and alignment changes the
+ * SemanticNetwork reads from the verbal descriptions. Rotations are clockwise.
+ */
+public enum FigureTransform {
+
+    IDENTITY,
+    ROTATE_90,
+    ROTATE_180,
+    ROTATE_270,
+    MIRROR_HORIZONTAL,
+    MIRROR_VERTICAL;
+
+    /**
+     * @param bitmap
+     * @return A new bitmap holding the transformed figure (the bitmap itself for IDENTITY)
+     */
+    public FigureBitmap apply(FigureBitmap bitmap) {
+        switch (this) {
+            case ROTATE_90:
+                return bitmap.rotate90();
+            case ROTATE_180:
+                return bitmap.mirrorHorizontal().mirrorVertical();
+            case ROTATE_270:
+                return bitmap.rotate90().mirrorHorizontal().mirrorVertical();
+            case MIRROR_HORIZONTAL:
+                return bitmap.mirrorHorizontal();
+            case MIRROR_VERTICAL:
+                return bitmap.mirrorVertical();
+            default:
+                return bitmap;
+        }
+    }
+}
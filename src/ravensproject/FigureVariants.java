@@ -0,0 +1,34 @@
+package ravensproject;
+
+/**
+ * The transformed versions of one figure's bitmap. Each variant is computed
+ * the first time it is asked for and then shared by every comparison the
+ * figure takes part in, so a figure compared against all the answers in
+ * several directions is still only rotated or mirrored once per transform.
+ */
+public class FigureVariants {
+
+    private FigureBitmap[] variants;
+
+    public FigureVariants(FigureBitmap bitmap) {
+        variants = new FigureBitmap[FigureTransform.values().length];
+        variants[FigureTransform.IDENTITY.ordinal()] = bitmap;
+    }
+
+    public FigureBitmap getBitmap() {
+        return variants[FigureTransform.IDENTITY.ordinal()];
+    }
+
+    /**
+     * @param transform
+     * @return The figure with the transform applied
+     */
+    public FigureBitmap get(FigureTransform transform) {
+        FigureBitmap variant = variants[transform.ordinal()];
+        if (variant == null) {
+            variant = transform.apply(getBitmap());
+            variants[transform.ordinal()] = variant;
+        }
+        return variant;
+    }
+}
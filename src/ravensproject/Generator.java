@@ -9,7 +9,30 @@ import java.util.List;
  */
 public class Generator<E> {
 
+    /**
+     * This method returns every permutation of a list. The list passed in is
+     * left untouched. Every permutation is materialized, so for anything but
+     * small lists prefer permutations().
+     *
+     * @param original
+     * @return The list of permutations
+     */
     public List<List<E>> generatePermutations(List<E> original) {
+        return permute(new ArrayList<>(original));
+    }
+
+    /**
+     * This method returns a lazy source of the distinct arrangements of a list.
+     * Equal elements are not rearranged among themselves.
+     *
+     * @param original
+     * @return The permutation source
+     */
+    public Permutations<E> permutations(List<E> original) {
+        return new Permutations<>(original);
+    }
+
+    private List<List<E>> permute(List<E> original) {
         if (original.size() == 0) {
             List<List<E>> result = new ArrayList<>();
             result.add(new ArrayList<E>());
@@ -17,7 +40,7 @@ public class Generator<E> {
         }
         E firstElement = original.remove(0);
         List<List<E>> permutationList = new ArrayList<>();
-        List<List<E>> permutations = generatePermutations(original);
+        List<List<E>> permutations = permute(original);
         for (List<E> smaller : permutations) {
             for (int index=0; index <= smaller.size(); index++) {
                 List<E> temp = new ArrayList<>(smaller);
@@ -0,0 +1,103 @@
+package ravensproject;
+
+import java.util.Arrays;
+
+/**
+ * This is a solver for the assignment problem (Kuhn-Munkres / Hungarian
+ * algorithm). Given a square matrix of scores it finds the one-to-one
+ * assignment of rows to columns with the highest total score in O(n^3).
+ */
+public class HungarianSolver {
+
+    /**
+     * This method finds the assignment of rows to columns that maximizes the
+     * total score. The returned array holds, for every row, the index of the
+     * column it is assigned to.
+     *
+     * @param scores square matrix of scores
+     * @return The column assigned to each row
+     */
+    public int[] maximize(int[][] scores) {
+        int n = scores.length;
+        if (n == 0)
+            return new int[0];
+
+        // Turn the maximization into a minimization over non-negative costs
+        int maxScore = Integer.MIN_VALUE;
+        for (int[] row : scores)
+            for (int score : row)
+                maxScore = Math.max(maxScore, score);
+
+        long[][] cost = new long[n][n];
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                cost[i][j] = (long) maxScore - scores[i][j];
+
+        return minimize(cost);
+    }
+
+    /**
+     * This method finds the assignment of rows to columns that minimizes the
+     * total cost. Rows and columns are 1-indexed internally, with index 0
+     * used as the sentinel for the augmenting path search.
+     *
+     * @param cost square matrix of costs
+     * @return The column assigned to each row
+     */
+    public int[] minimize(long[][] cost) {
+        int n = cost.length;
+        long[] u = new long[n + 1];
+        long[] v = new long[n + 1];
+        int[] p = new int[n + 1];   // p[j] = row matched to column j
+        int[] way = new int[n + 1];
+        long[] minv = new long[n + 1];
+        boolean[] used = new boolean[n + 1];
+
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, Long.MAX_VALUE);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                long delta = Long.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= n; j++) {
+                    if (!used[j]) {
+                        long cur = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                        if (cur < minv[j]) {
+                            minv[j] = cur;
+                            way[j] = j0;
+                        }
+                        if (minv[j] < delta) {
+                            delta = minv[j];
+                            j1 = j;
+                        }
+                    }
+                }
+                for (int j = 0; j <= n; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    } else
+                        minv[j] -= delta;
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+
+            // Flip the augmenting path
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int[] assignment = new int[n];
+        for (int j = 1; j <= n; j++)
+            assignment[p[j] - 1] = j - 1;
+
+        return assignment;
+    }
+}
@@ -0,0 +1,92 @@
+package ravensproject;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.function.Supplier;
+
+/**
+ * A small logging facade for the agent and its drivers.
+ *
+ * The level is read once from -Dravens.logLevel (ERROR, WARN, INFO, DEBUG or
+ * TRACE; default INFO) into a static final, so a disabled call is a constant
+ * check the JIT removes. Messages are passed as suppliers and only built when
+ * their level is enabled. Lines go to a RingBufferAppender, whose background
+ * thread does the printing, so logging threads never take the System.out
+ * lock; -Dravens.logAsync=false prints on the calling thread instead.
+ */
+public class Log {
+
+    public enum Level {
+        ERROR, WARN, INFO, DEBUG, TRACE
+    }
+
+    private static final int THRESHOLD =
+            Level.valueOf(System.getProperty("ravens.logLevel", Level.INFO.name()).toUpperCase()).ordinal();
+    private static final boolean ASYNC = Boolean.parseBoolean(System.getProperty("ravens.logAsync", "true"));
+    private static final int CAPACITY = Integer.getInteger("ravens.logBuffer", 8192);
+
+    private static final RingBufferAppender APPENDER = ASYNC ? new RingBufferAppender(CAPACITY, System.out) : null;
+
+    private Log() {
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() <= THRESHOLD;
+    }
+
+    public static void error(Supplier<String> message) {
+        if (Level.ERROR.ordinal() <= THRESHOLD)
+            write(Level.ERROR, message.get(), null);
+    }
+
+    /**
+     * @param message
+     * @param thrown whose stack trace follows the message
+     */
+    public static void error(Supplier<String> message, Throwable thrown) {
+        if (Level.ERROR.ordinal() <= THRESHOLD)
+            write(Level.ERROR, message.get(), thrown);
+    }
+
+    public static void warn(Supplier<String> message) {
+        if (Level.WARN.ordinal() <= THRESHOLD)
+            write(Level.WARN, message.get(), null);
+    }
+
+    public static void info(Supplier<String> message) {
+        if (Level.INFO.ordinal() <= THRESHOLD)
+            write(Level.INFO, message.get(), null);
+    }
+
+    public static void debug(Supplier<String> message) {
+        if (Level.DEBUG.ordinal() <= THRESHOLD)
+            write(Level.DEBUG, message.get(), null);
+    }
+
+    public static void trace(Supplier<String> message) {
+        if (Level.TRACE.ordinal() <= THRESHOLD)
+            write(Level.TRACE, message.get(), null);
+    }
+
+    /**
+     * This method waits until every line logged so far has been printed.
+     */
+    public static void flush() {
+        if (APPENDER != null)
+            APPENDER.flush();
+        else
+            System.out.flush();
+    }
+
+    private static void write(Level level, String message, Throwable thrown) {
+        StringBuilder line = new StringBuilder(message.length() + 32);
+        line.append(level.name()).append(" [").append(Thread.currentThread().getName()).append("] ").append(message);
+        if (thrown != null) {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            line.append(System.lineSeparator()).append(trace.toString().trim());
+        }
+        if (APPENDER == null || !APPENDER.offer(line.toString()))
+            System.out.println(line);
+    }
+}
@@ -0,0 +1,29 @@
+package ravensproject;
+
+/**
+ * The strategies the SemanticNetwork can use to pair up the objects of
+ * two figures.
+ */
+public enum MatchMode {
+
+    /**
+     * Scores every permutation of the second figure's objects. This is
+     * the original approach and is O(n!) in the number of objects.
+     */
+    EXHAUSTIVE,
+
+    /**
+     * Solves the pairing as an assignment problem over the pairwise score
+     * matrix (Hungarian algorithm) in O(n^3). Figures of up to
+     * SemanticNetwork.EXHAUSTIVE_LIMIT objects are searched exhaustively
+     * instead, so their tied mappings are the ones EXHAUSTIVE picks; on
+     * larger figures the solver may settle a tie differently.
+     */
+    ASSIGNMENT,
+
+    /**
+     * Searches partial mappings with branch-and-bound, stopping with the
+     * best mapping found so far once its node or time budget runs out.
+     */
+    BRANCH_AND_BOUND
+}
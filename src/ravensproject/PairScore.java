@@ -0,0 +1,54 @@
+package ravensproject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the result of comparing a single object from one figure
+ * with a single object from another figure. Either object may be null, in
+ * which case the pair represents an added or deleted object.
+ */
+public class PairScore {
+
+    private RavensObject fig1Object, fig2Object;
+    private int score;
+    private List<String> fig1AttrList;
+    private List<String> fig2AttrList;
+    private List<String> transformationList;
+
+    public PairScore(RavensObject fig1Object, RavensObject fig2Object) {
+        this.fig1Object = fig1Object;
+        this.fig2Object = fig2Object;
+        fig1AttrList = new ArrayList<>();
+        fig2AttrList = new ArrayList<>();
+        transformationList = new ArrayList<>();
+    }
+
+    public void addScore(int points) {
+        score += points;
+    }
+
+    public RavensObject getFig1Object() {
+        return fig1Object;
+    }
+
+    public RavensObject getFig2Object() {
+        return fig2Object;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public List<String> getFig1AttrList() {
+        return fig1AttrList;
+    }
+
+    public List<String> getFig2AttrList() {
+        return fig2AttrList;
+    }
+
+    public List<String> getTransformationList() {
+        return transformationList;
+    }
+}
@@ -0,0 +1,96 @@
+package ravensproject;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * This is a lazy source of the distinct arrangements of a list. Equal elements
+ * (including nulls used as padding) are treated as interchangeable, so a list
+ * with k copies of the same element produces n!/k! arrangements rather than n!.
+ *
+ * Arrangements are produced in lexicographic order by stepping an int[] of
+ * element classes in place, so nothing is allocated per step and the input
+ * list is never modified. Call next() before reading the first arrangement.
+ */
+public class Permutations<E> {
+
+    private List<E> elements;
+    private int[] arrangement; //index of the first occurrence of each element's class
+    private boolean started;
+
+    public Permutations(List<E> elements) {
+        this.elements = elements;
+        arrangement = new int[elements.size()];
+        for (int i = 0; i < arrangement.length; i++) {
+            int first = i;
+            for (int j = 0; j < i; j++) {
+                if (Objects.equals(elements.get(j), elements.get(i))) {
+                    first = j;
+                    break;
+                }
+            }
+            arrangement[i] = first;
+        }
+        Arrays.sort(arrangement);
+    }
+
+    /**
+     * This method advances to the next distinct arrangement.
+     *
+     * @return Whether there was another arrangement
+     */
+    public boolean next() {
+        if (!started) {
+            started = true;
+            return true;
+        }
+
+        // Find the rightmost position that can still be increased
+        int i = arrangement.length - 2;
+        while (i >= 0 && arrangement[i] >= arrangement[i + 1])
+            i--;
+        if (i < 0)
+            return false;
+
+        // Swap it with the smallest larger element to its right
+        int j = arrangement.length - 1;
+        while (arrangement[j] <= arrangement[i])
+            j--;
+        swap(i, j);
+
+        // The suffix is descending; reverse it to make it the smallest
+        for (int left = i + 1, right = arrangement.length - 1; left < right; left++, right--)
+            swap(left, right);
+
+        return true;
+    }
+
+    private void swap(int i, int j) {
+        int temp = arrangement[i];
+        arrangement[i] = arrangement[j];
+        arrangement[j] = temp;
+    }
+
+    /**
+     * @param position
+     * @return The element at the given position of the current arrangement
+     */
+    public E get(int position) {
+        return elements.get(arrangement[position]);
+    }
+
+    /**
+     * Equal elements share one index, the index of their first occurrence.
+     *
+     * @param position
+     * @return The index in the original list of the element at the given position
+     */
+    public int indexAt(int position) {
+        return arrangement[position];
+    }
+
+    public int size() {
+        return arrangement.length;
+    }
+}
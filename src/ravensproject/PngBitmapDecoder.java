@@ -0,0 +1,333 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A PNG decoder that goes straight from the file to a FigureBitmap. It reads
+ * the chunks itself, inflates the IDAT data with an Inflater into a reused
+ * scanline buffer, reverses the scanline filters and thresholds each pixel
+ * into the packed bitmap, without building a BufferedImage.
+ *
+ * Non-interlaced grayscale, RGB, palette, gray+alpha and RGBA images of any
+ * bit depth are supported. For anything else (interlaced images, or a tRNS
+ * colour key on grayscale/RGB images) decode returns null so the caller can
+ * fall back to ImageIO. Thresholds are applied to the raw sample values, with
+ * the same luminance weights as FigureBitmap.fromImage.
+ *
+ * A decoder reuses its buffers between images, so it must not be shared
+ * between threads.
+ */
+public class PngBitmapDecoder {
+
+    private static final long SIGNATURE = 0x89504E470D0A1A0AL;
+
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int GRAY_ALPHA = 4;
+    private static final int RGBA = 6;
+
+    private ByteBuffer file;
+    private Inflater inflater;
+    private byte[] currentRow;
+    private byte[] previousRow;
+    private int[] palette; //ARGB
+
+    public PngBitmapDecoder() {
+        file = ByteBuffer.allocate(64 * 1024);
+        inflater = new Inflater();
+        currentRow = new byte[0];
+        previousRow = new byte[0];
+        palette = new int[256];
+    }
+
+    /**
+     * This method decodes a PNG file into a bitmap.
+     *
+     * @param path
+     * @param threshold luminance from 0 to 255 below which a pixel is dark
+     * @return The bitmap, or null if the image uses a variant this decoder does not support
+     * @throws IOException if the file cannot be read or is not a valid PNG
+     */
+    public FigureBitmap decode(String path, int threshold) throws IOException {
+        read(new File(path));
+        byte[] bytes = file.array();
+        int limit = file.position();
+
+        if (limit < 8 || file.getLong(0) != SIGNATURE)
+            throw new IOException(path + ": not a PNG file");
+
+        int width = 0, height = 0, bitDepth = 0, colorType = 0;
+        int paletteSize = 0;
+        boolean header = false;
+        int firstData = -1;
+
+        // Walk the chunks up to the first IDAT; the image data is streamed from there
+        int pos = 8;
+        while (pos + 8 <= limit) {
+            int length = file.getInt(pos);
+            int type = file.getInt(pos + 4);
+            int data = pos + 8;
+            if (length < 0 || data + length + 4 > limit)
+                throw new IOException(path + ": truncated chunk");
+
+            if (type == 0x49484452) { //IHDR
+                width = file.getInt(data);
+                height = file.getInt(data + 4);
+                bitDepth = bytes[data + 8] & 0xFF;
+                colorType = bytes[data + 9] & 0xFF;
+                int interlace = bytes[data + 12] & 0xFF;
+                if (interlace != 0)
+                    return null;
+                header = true;
+            } else if (type == 0x504C5445) { //PLTE
+                paletteSize = length / 3;
+                for (int i = 0; i < paletteSize; i++)
+                    palette[i] = 0xFF000000 | (bytes[data + 3 * i] & 0xFF) << 16
+                            | (bytes[data + 3 * i + 1] & 0xFF) << 8 | (bytes[data + 3 * i + 2] & 0xFF);
+            } else if (type == 0x74524E53) { //tRNS
+                if (colorType != PALETTE)
+                    return null;
+                for (int i = 0; i < length && i < paletteSize; i++)
+                    palette[i] = (palette[i] & 0x00FFFFFF) | (bytes[data + i] & 0xFF) << 24;
+            } else if (type == 0x49444154) { //IDAT
+                firstData = pos;
+                break;
+            } else if (type == 0x49454E44) { //IEND
+                break;
+            }
+            pos = data + length + 4;
+        }
+
+        if (!header || firstData < 0 || width <= 0 || height <= 0)
+            throw new IOException(path + ": missing IHDR or IDAT");
+
+        int channels = channels(colorType);
+        if (channels == 0)
+            throw new IOException(path + ": unknown color type " + colorType);
+        int bitsPerPixel = channels * bitDepth;
+        int bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        int stride = (int) (((long) width * bitsPerPixel + 7) / 8);
+
+        if (currentRow.length < stride) {
+            currentRow = new byte[stride];
+            previousRow = new byte[stride];
+        }
+        Arrays.fill(previousRow, 0, stride, (byte) 0);
+
+        FigureBitmap bitmap = new FigureBitmap(width, height);
+        long[] words = bitmap.getWords();
+        int wordsPerRow = bitmap.getWordsPerRow();
+
+        inflater.reset();
+        int[] chunk = {firstData};
+        byte[] filter = new byte[1];
+        for (int y = 0; y < height; y++) {
+            inflateFully(path, bytes, limit, chunk, filter, 1);
+            inflateFully(path, bytes, limit, chunk, currentRow, stride);
+            unfilter(path, filter[0], stride, bytesPerPixel);
+
+            int rowBase = y * wordsPerRow;
+            for (int x = 0; x < width; x++)
+                if (isDark(x, colorType, bitDepth, threshold))
+                    words[rowBase + (x >>> 6)] |= 1L << (x & 63);
+
+            byte[] temp = previousRow;
+            previousRow = currentRow;
+            currentRow = temp;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * This method reads the whole file into the reused buffer.
+     */
+    private void read(File path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8)
+                throw new IOException(path + ": file is too large");
+            if (file.capacity() < size)
+                file = ByteBuffer.allocate((int) Math.max(size, file.capacity() * 2L));
+            file.clear();
+            while (file.position() < size && channel.read(file) >= 0) {
+                // keep reading until the whole file is in the buffer
+            }
+        }
+    }
+
+    /**
+     * This method inflates exactly length bytes into target, feeding the
+     * inflater the following IDAT chunks as it runs out of input.
+     *
+     * @param chunk holds the position of the next IDAT chunk to feed
+     */
+    private void inflateFully(String path, byte[] bytes, int limit, int[] chunk,
+                              byte[] target, int length) throws IOException {
+        int filled = 0;
+        try {
+            while (filled < length) {
+                int inflated = inflater.inflate(target, filled, length - filled);
+                filled += inflated;
+                if (filled == length)
+                    break;
+                if (inflater.finished())
+                    throw new IOException(path + ": image data ends early");
+                if (inflater.needsInput())
+                    feedNextChunk(path, bytes, limit, chunk);
+                else if (inflated == 0 && inflater.needsDictionary())
+                    throw new IOException(path + ": image data needs a preset dictionary");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(path + ": corrupt image data", ex);
+        }
+    }
+
+    private void feedNextChunk(String path, byte[] bytes, int limit, int[] chunk) throws IOException {
+        int pos = chunk[0];
+        while (pos + 8 <= limit) {
+            int length = file.getInt(pos);
+            int type = file.getInt(pos + 4);
+            int next = pos + 8 + length + 4;
+            if (type == 0x49444154) { //IDAT
+                chunk[0] = next;
+                if (length > 0) {
+                    inflater.setInput(bytes, pos + 8, length);
+                    return;
+                }
+            } else {
+                break;
+            }
+            pos = next;
+        }
+        throw new IOException(path + ": image data ends early");
+    }
+
+    /**
+     * This method reverses the filter of the current scanline in place,
+     * using the previous (already unfiltered) scanline.
+     */
+    private void unfilter(String path, int filter, int stride, int bpp) throws IOException {
+        byte[] cur = currentRow;
+        byte[] prev = previousRow;
+        switch (filter) {
+            case 0:
+                break;
+            case 1: //Sub
+                for (int i = bpp; i < stride; i++)
+                    cur[i] += cur[i - bpp];
+                break;
+            case 2: //Up
+                for (int i = 0; i < stride; i++)
+                    cur[i] += prev[i];
+                break;
+            case 3: //Average
+                for (int i = 0; i < stride; i++) {
+                    int left = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    cur[i] += (left + (prev[i] & 0xFF)) >>> 1;
+                }
+                break;
+            case 4: //Paeth
+                for (int i = 0; i < stride; i++) {
+                    int a = i >= bpp ? cur[i - bpp] & 0xFF : 0;
+                    int b = prev[i] & 0xFF;
+                    int c = i >= bpp ? prev[i - bpp] & 0xFF : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+                    cur[i] += (pa <= pb && pa <= pc) ? a : (pb <= pc ? b : c);
+                }
+                break;
+            default:
+                throw new IOException(path + ": unknown scanline filter " + filter);
+        }
+    }
+
+    /**
+     * This method decides whether pixel x of the current scanline is dark:
+     * opaque enough and with a luminance below the threshold.
+     */
+    private boolean isDark(int x, int colorType, int bitDepth, int threshold) {
+        int r, g, b, alpha = 255;
+        switch (colorType) {
+            case GRAY:
+                r = g = b = sample(x, 0, 1, bitDepth);
+                break;
+            case GRAY_ALPHA:
+                r = g = b = sample(x, 0, 2, bitDepth);
+                alpha = sample(x, 1, 2, bitDepth);
+                break;
+            case RGB:
+                r = sample(x, 0, 3, bitDepth);
+                g = sample(x, 1, 3, bitDepth);
+                b = sample(x, 2, 3, bitDepth);
+                break;
+            case RGBA:
+                r = sample(x, 0, 4, bitDepth);
+                g = sample(x, 1, 4, bitDepth);
+                b = sample(x, 2, 4, bitDepth);
+                alpha = sample(x, 3, 4, bitDepth);
+                break;
+            default: //PALETTE
+                int argb = palette[rawSample(x, 0, 1, bitDepth)];
+                r = (argb >> 16) & 0xFF;
+                g = (argb >> 8) & 0xFF;
+                b = argb & 0xFF;
+                alpha = argb >>> 24;
+                break;
+        }
+        int luminance = (299 * r + 587 * g + 114 * b) / 1000;
+        return alpha >= 128 && luminance < threshold;
+    }
+
+    /**
+     * @return The sample scaled to 0..255
+     */
+    private int sample(int x, int channel, int channels, int bitDepth) {
+        int raw = rawSample(x, channel, channels, bitDepth);
+        switch (bitDepth) {
+            case 16:
+                return raw >>> 8;
+            case 8:
+                return raw;
+            default:
+                return raw * 255 / ((1 << bitDepth) - 1);
+        }
+    }
+
+    private int rawSample(int x, int channel, int channels, int bitDepth) {
+        byte[] row = currentRow;
+        if (bitDepth == 8)
+            return row[x * channels + channel] & 0xFF;
+        if (bitDepth == 16) {
+            int i = (x * channels + channel) * 2;
+            return (row[i] & 0xFF) << 8 | (row[i + 1] & 0xFF);
+        }
+        int bit = (x * channels + channel) * bitDepth;
+        int shift = 8 - bitDepth - (bit & 7);
+        return ((row[bit >>> 3] & 0xFF) >>> shift) & ((1 << bitDepth) - 1);
+    }
+
+    private int channels(int colorType) {
+        switch (colorType) {
+            case GRAY:
+            case PALETTE:
+                return 1;
+            case GRAY_ALPHA:
+                return 2;
+            case RGB:
+                return 3;
+            case RGBA:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * A parser for ProblemData.txt files. The file is read through a FileChannel
+ * into a reused buffer and parsed directly from the bytes: the tab depth of a
+ * line is counted rather than matched, and attribute keys and values are cut
+ * at the colon without regular expressions.
+ *
+ * The layout is four header lines (problem type, correct answer, has visual,
+ * has verbal) followed, for verbal problems, by figure names at depth 0,
+ * object names at depth 1 and key:value attributes at depth 2. Files that do
+ * not follow it are rejected with a ProblemFormatException.
+ *
+ * A parser reuses its buffer between files, so it must not be shared between
+ * threads.
+ */
+public class ProblemDataParser {
+
+    private ByteBuffer buffer;
+
+    // Position of the current line while parsing
+    private byte[] bytes;
+    private int limit;
+    private int position;
+    private int lineNumber;
+    private int lineStart;
+    private int lineEnd;
+
+    public ProblemDataParser() {
+        buffer = ByteBuffer.allocate(16 * 1024);
+    }
+
+    /**
+     * This method parses the ProblemData.txt file of a problem.
+     *
+     * @param file the problem's data file
+     * @param setName the name of the problem's set
+     * @param problemName the name of the problem
+     * @return The parsed problem
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public RavensProblem parse(File file, String setName, String problemName) throws IOException {
+        read(file);
+
+        String problemType = requireLine(file, "problem type");
+        if (problemType.length() != 3 || problemType.charAt(1) != 'x'
+                || !Character.isDigit(problemType.charAt(0)) || !Character.isDigit(problemType.charAt(2)))
+            throw new ProblemFormatException(file, lineNumber, "unknown problem type '" + problemType + "'");
+
+        String answer = requireLine(file, "correct answer");
+        int correctAnswer;
+        try {
+            correctAnswer = Integer.parseInt(answer);
+        } catch (NumberFormatException ex) {
+            throw new ProblemFormatException(file, lineNumber, "correct answer '" + answer + "' is not a number");
+        }
+        boolean hasVisual = Boolean.parseBoolean(requireLine(file, "visual flag"));
+        boolean hasVerbal = Boolean.parseBoolean(requireLine(file, "verbal flag"));
+
+        RavensProblem problem = new RavensProblem(problemName, problemType, correctAnswer, hasVisual, hasVerbal);
+        if (!hasVerbal) {
+            ProblemLoader.addVisualFigures(problem, setName);
+            return problem;
+        }
+
+        HashMap<String, RavensFigure> figures = problem.getFigures();
+        RavensFigure currentFigure = null;
+        RavensObject currentObject = null;
+        while (nextLine()) {
+            int depth = 0;
+            while (lineStart + depth < lineEnd && bytes[lineStart + depth] == '\t')
+                depth++;
+            if (lineStart + depth == lineEnd)
+                continue; //blank line
+
+            if (depth == 0) {
+                String name = slice(lineStart, lineEnd);
+                currentFigure = new RavensFigure(name, problemName, setName);
+                currentObject = null;
+                figures.put(name, currentFigure);
+            } else if (depth == 1) {
+                if (currentFigure == null)
+                    throw new ProblemFormatException(file, lineNumber, "object outside of a figure");
+                String name = slice(lineStart + depth, lineEnd);
+                currentObject = new RavensObject(name);
+                currentFigure.getObjects().put(name, currentObject);
+            } else {
+                if (currentObject == null)
+                    throw new ProblemFormatException(file, lineNumber, "attribute outside of an object");
+                int colon = indexOf(':', lineStart + depth, lineEnd);
+                if (colon < 0)
+                    throw new ProblemFormatException(file, lineNumber, "attribute without ':'");
+
+                // Like split(":"), the value stops at a second colon
+                int valueEnd = indexOf(':', colon + 1, lineEnd);
+                if (valueEnd < 0)
+                    valueEnd = lineEnd;
+                if (valueEnd == colon + 1)
+                    throw new ProblemFormatException(file, lineNumber, "attribute without a value");
+                currentObject.getAttributes().put(slice(lineStart + depth, colon), slice(colon + 1, valueEnd));
+            }
+        }
+
+        return problem;
+    }
+
+    /**
+     * This method reads the whole file into the buffer, growing it if needed.
+     *
+     * @param file
+     * @throws IOException if the file cannot be read
+     */
+    private void read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8)
+                throw new ProblemFormatException(file, 0, "file is too large");
+            if (buffer.capacity() < size)
+                buffer = ByteBuffer.allocate((int) Math.max(size, buffer.capacity() * 2L));
+
+            buffer.clear();
+            while (buffer.position() < size && channel.read(buffer) >= 0) {
+                // keep reading until the whole file is in the buffer
+            }
+        }
+
+        bytes = buffer.array();
+        limit = buffer.position();
+        position = 0;
+        lineNumber = 0;
+    }
+
+    /**
+     * This method moves to the next line, setting lineStart and lineEnd
+     * (excluding the line break).
+     *
+     * @return Whether there was another line
+     */
+    private boolean nextLine() {
+        if (position >= limit)
+            return false;
+
+        lineStart = position;
+        int end = indexOf('\n', position, limit);
+        if (end < 0)
+            end = limit;
+        position = end + 1;
+        if (end > lineStart && bytes[end - 1] == '\r')
+            end--;
+        lineEnd = end;
+        lineNumber++;
+        return true;
+    }
+
+    private String requireLine(File file, String what) throws ProblemFormatException {
+        if (!nextLine())
+            throw new ProblemFormatException(file, lineNumber + 1, "missing " + what);
+        return slice(lineStart, lineEnd).trim();
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (bytes[i] == c)
+                return i;
+        return -1;
+    }
+
+    /**
+     * This method decodes part of the current file, dropping any tabs like
+     * the Scanner based loader does.
+     */
+    private String slice(int from, int to) {
+        if (indexOf('\t', from, to) < 0)
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+
+        StringBuilder builder = new StringBuilder(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        for (int i = builder.length() - 1; i >= 0; i--)
+            if (builder.charAt(i) == '\t')
+                builder.deleteCharAt(i);
+        return builder.toString();
+    }
+}
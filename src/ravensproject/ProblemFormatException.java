@@ -0,0 +1,17 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Thrown when a ProblemData.txt file does not follow the expected format.
+ * The message names the file and the line at fault.
+ */
+public class ProblemFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ProblemFormatException(File file, int line, String message) {
+        super(file.getPath() + ":" + line + ": " + message);
+    }
+}
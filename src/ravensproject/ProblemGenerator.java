@@ -0,0 +1,461 @@
+package ravensproject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Writes synthetic verbal problems in the Problems/ layout (ProblemSetList.txt,
+ * each set's ProblemList.txt and one ProblemData.txt per problem) so the
+ * loaders and the Agent can be run on far more, and far larger, problems than
+ * the real corpus has.
+ *
+ * Every row of a problem starts with a random figure and applies the same
+ * rules from one column to the next: an attribute moving along its vocabulary,
+ * or an object being added or deleted. The correct answer applies the rules to
+ * the last row; the other answers apply them the wrong number of times, break
+ * one rule, or are random figures, and are all different from the correct one.
+ *
+ * Options are given as key=value arguments:
+ * <pre>
+ * out=Problems            directory to write into
+ * set=Synthetic           name of the set (sets=N adds " 1".." N")
+ * sets=1                  number of sets
+ * problems=100            problems per set
+ * type=2x2                2x2, 3x3 or mixed
+ * objects=1-4             objects in a row's first figure, a number or a range
+ * rules=size,fill,angle,shape,alignment,add,delete
+ *                         rules a problem may use
+ * ruleCount=2             rules each problem applies
+ * relations=0.3           chance of each left-of/above/overlaps/inside link
+ * seed=1
+ * shapes=, sizes=, fills=, angles=, alignments=
+ *                         comma separated vocabularies
+ * </pre>
+ * Existing sets in ProblemSetList.txt are kept and the new ones appended.
+ */
+public class ProblemGenerator {
+
+    private static final String[] ATTRIBUTES = {"shape", "size", "fill", "angle", "alignment"};
+    private static final String[] RELATIONS = {"left-of", "above", "overlaps", "inside"};
+
+    private static final int SHAPE = 0;
+    private static final int ALIGNMENT = 4;
+
+    private String[][] vocabularies;
+    private List<String> rules;
+    private int ruleCount;
+    private int minObjects;
+    private int maxObjects;
+    private double relationDensity;
+    private Random random;
+
+    public ProblemGenerator(long seed) {
+        vocabularies = new String[][]{
+                {"circle", "square", "triangle", "pentagon", "hexagon", "octagon", "diamond", "heart",
+                        "star", "plus", "rectangle", "pac-man"},
+                {"very small", "small", "medium", "large", "very large", "huge"},
+                {"no", "yes", "left-half", "right-half", "top-half", "bottom-half"},
+                {"0", "45", "90", "135", "180", "225", "270", "315"},
+                {"bottom-left", "bottom-right", "top-right", "top-left"}
+        };
+        rules = new ArrayList<>(Arrays.asList("size", "fill", "angle", "shape", "alignment", "add", "delete"));
+        ruleCount = 2;
+        minObjects = 1;
+        maxObjects = 4;
+        relationDensity = 0.3;
+        random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals < 0)
+                throw new IllegalArgumentException("expected key=value, got " + arg);
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        ProblemGenerator generator = new ProblemGenerator(Long.parseLong(options.getOrDefault("seed", "1")));
+        generator.configure(options);
+
+        File out = new File(options.getOrDefault("out", "Problems"));
+        String setName = options.getOrDefault("set", "Synthetic");
+        int sets = Integer.parseInt(options.getOrDefault("sets", "1"));
+        int problems = Integer.parseInt(options.getOrDefault("problems", "100"));
+        String type = options.getOrDefault("type", "2x2");
+
+        long start = System.nanoTime();
+        List<String> setNames = new ArrayList<>();
+        for (int s = 1; s <= sets; s++) {
+            String name = sets == 1 ? setName : setName + " " + s;
+            generator.writeSet(out, name, problems, type);
+            setNames.add(name);
+        }
+        addSetNames(out, setNames);
+        System.out.printf("Wrote %d problems in %d set(s) under %s in %.1f s%n",
+                (long) sets * problems, sets, out, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * This method applies the options that shape the generated problems.
+     *
+     * @param options
+     */
+    public void configure(Map<String, String> options) {
+        for (int a = 0; a < ATTRIBUTES.length; a++) {
+            String vocabulary = options.get(ATTRIBUTES[a] + "s");
+            if (vocabulary != null)
+                vocabularies[a] = vocabulary.split(",");
+            if (vocabularies[a].length < 2)
+                throw new IllegalArgumentException("the " + ATTRIBUTES[a] + " vocabulary needs at least 2 values");
+        }
+        if (options.containsKey("rules"))
+            rules = new ArrayList<>(Arrays.asList(options.get("rules").split(",")));
+        for (String rule : rules)
+            if (!rule.equals("add") && !rule.equals("delete") && attributeIndex(rule) < 0)
+                throw new IllegalArgumentException("unknown rule " + rule);
+        ruleCount = Math.min(rules.size(), Integer.parseInt(options.getOrDefault("ruleCount", String.valueOf(ruleCount))));
+
+        String objects = options.getOrDefault("objects", minObjects + "-" + maxObjects);
+        int dash = objects.indexOf('-');
+        minObjects = Integer.parseInt(dash < 0 ? objects : objects.substring(0, dash));
+        maxObjects = Integer.parseInt(dash < 0 ? objects : objects.substring(dash + 1));
+        if (minObjects < 1 || maxObjects < minObjects)
+            throw new IllegalArgumentException("bad object count " + objects);
+
+        relationDensity = Double.parseDouble(options.getOrDefault("relations", String.valueOf(relationDensity)));
+    }
+
+    /**
+     * This method writes one set: its ProblemList.txt and every problem's
+     * ProblemData.txt.
+     *
+     * @param out the Problems directory
+     * @param setName
+     * @param problems the number of problems
+     * @param type 2x2, 3x3 or mixed
+     * @throws IOException if a file cannot be written
+     */
+    public void writeSet(File out, String setName, int problems, String type) throws IOException {
+        File setDirectory = new File(out, setName);
+        if (!setDirectory.isDirectory() && !setDirectory.mkdirs())
+            throw new IOException("cannot create " + setDirectory);
+
+        int digits = Math.max(2, String.valueOf(problems).length());
+        try (Writer list = Files.newBufferedWriter(new File(setDirectory, "ProblemList.txt").toPath(),
+                StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= problems; i++) {
+                String problemType = type.equals("mixed") ? (random.nextBoolean() ? "2x2" : "3x3") : type;
+                String problemName = String.format("%s Problem %0" + digits + "d", setName, i);
+                File problemDirectory = new File(setDirectory, problemName);
+                if (!problemDirectory.isDirectory() && !problemDirectory.mkdirs())
+                    throw new IOException("cannot create " + problemDirectory);
+                try (BufferedWriter data = Files.newBufferedWriter(
+                        new File(problemDirectory, "ProblemData.txt").toPath(), StandardCharsets.UTF_8)) {
+                    writeProblem(data, problemType);
+                }
+                list.write(problemName);
+                list.write('\n');
+            }
+        }
+    }
+
+    /**
+     * This method generates one problem and writes it in the ProblemData.txt format.
+     *
+     * @param data
+     * @param problemType 2x2 or 3x3
+     * @throws IOException if the problem cannot be written
+     */
+    public void writeProblem(Writer data, String problemType) throws IOException {
+        int size = problemType.equals("3x3") ? 3 : 2;
+        int answers = size == 3 ? 8 : 6;
+        boolean withAlignment = size == 2;
+
+        // Pick the rules, and a step for each attribute rule
+        List<String> available = new ArrayList<>(rules);
+        if (!withAlignment)
+            available.remove("alignment");
+        List<String> chosen = new ArrayList<>();
+        while (chosen.size() < ruleCount && !available.isEmpty())
+            chosen.add(available.remove(random.nextInt(available.size())));
+        int[] steps = new int[ATTRIBUTES.length];
+        int growth = 0;
+        for (String rule : chosen) {
+            if (rule.equals("add"))
+                growth++;
+            else if (rule.equals("delete"))
+                growth--;
+            else
+                steps[attributeIndex(rule)] = 1 + random.nextInt(vocabularies[attributeIndex(rule)].length - 1);
+        }
+
+        // Rows that delete objects need enough objects to last the row
+        int first = Math.max(minObjects, growth < 0 ? 1 - growth * (size - 1) : 1);
+        int last = Math.max(first, maxObjects);
+
+        List<Figure> figures = new ArrayList<>();
+        for (int row = 0; row < size; row++) {
+            Figure figure = randomFigure(first + random.nextInt(last - first + 1), withAlignment);
+            figures.add(figure);
+            for (int col = 1; col < size && figures.size() < size * size - 1; col++) {
+                figure = figure.apply(steps, growth, withAlignment);
+                figures.add(figure);
+            }
+        }
+
+        // The correct answer continues the last row; every distractor differs from it
+        Figure beforeAnswer = figures.get(figures.size() - 1);
+        Figure correct = beforeAnswer.apply(steps, growth, withAlignment);
+        Set<String> seen = new LinkedHashSet<>();
+        seen.add(correct.signature());
+        List<Figure> choices = new ArrayList<>();
+        int attempts = 0;
+        while (choices.size() < answers - 1) {
+            Figure distractor = distractor(beforeAnswer, correct, steps, growth, withAlignment, attempts++ > 50);
+            if (seen.add(distractor.signature()))
+                choices.add(distractor);
+        }
+        int correctAnswer = 1 + random.nextInt(answers);
+        choices.add(correctAnswer - 1, correct);
+
+        data.write(problemType + "\n" + correctAnswer + "\nfalse\ntrue\n");
+        NameCounter names = new NameCounter();
+        for (int i = 0; i < figures.size(); i++)
+            figures.get(i).write(data, String.valueOf((char) ('A' + i)), names);
+        for (int i = 0; i < choices.size(); i++)
+            choices.get(i).write(data, String.valueOf(i + 1), names);
+    }
+
+    /**
+     * This method makes a wrong answer from the figure before the answer.
+     *
+     * @param beforeAnswer
+     * @param correct
+     * @param steps
+     * @param growth
+     * @param withAlignment
+     * @param randomOnly whether to give up on near misses and only make random figures
+     * @return The distractor
+     */
+    private Figure distractor(Figure beforeAnswer, Figure correct, int[] steps, int growth,
+                              boolean withAlignment, boolean randomOnly) {
+        switch (randomOnly ? 4 : random.nextInt(5)) {
+            case 0:
+                // The rules not applied, or applied twice
+                return random.nextBoolean() ? beforeAnswer.copy()
+                        : correct.apply(steps, growth, withAlignment);
+            case 1: {
+                // One attribute moved the wrong way
+                int[] wrongSteps = steps.clone();
+                int attribute = random.nextInt(withAlignment ? ATTRIBUTES.length : ALIGNMENT);
+                wrongSteps[attribute] = (wrongSteps[attribute] + 1) % vocabularies[attribute].length;
+                return beforeAnswer.apply(wrongSteps, growth, withAlignment);
+            }
+            case 2:
+                // An object too many or too few
+                return beforeAnswer.apply(steps, growth + (random.nextBoolean() || beforeAnswer.size() + growth <= 1 ? 1 : -1),
+                        withAlignment);
+            case 3: {
+                // The right change on a different shape
+                Figure figure = correct.copy();
+                if (figure.size() > 0) {
+                    int[] values = figure.objects.get(random.nextInt(figure.size())).values;
+                    values[SHAPE] = (values[SHAPE] + 1 + random.nextInt(vocabularies[SHAPE].length - 1))
+                            % vocabularies[SHAPE].length;
+                }
+                return figure;
+            }
+            default:
+                return randomFigure(Math.max(1, correct.size() + random.nextInt(3) - 1), withAlignment);
+        }
+    }
+
+    private Figure randomFigure(int objects, boolean withAlignment) {
+        Figure figure = new Figure();
+        for (int i = 0; i < objects; i++)
+            figure.add(randomObject(withAlignment));
+        return figure;
+    }
+
+    private GeneratedObject randomObject(boolean withAlignment) {
+        int[] values = new int[ATTRIBUTES.length];
+        for (int a = 0; a < ATTRIBUTES.length; a++)
+            values[a] = a == ALIGNMENT && !withAlignment ? -1 : random.nextInt(vocabularies[a].length);
+        return new GeneratedObject(values);
+    }
+
+    private static int attributeIndex(String attribute) {
+        for (int a = 0; a < ATTRIBUTES.length; a++)
+            if (ATTRIBUTES[a].equals(attribute))
+                return a;
+        return -1;
+    }
+
+    /**
+     * This method appends the new sets to ProblemSetList.txt, keeping the ones
+     * already listed.
+     *
+     * @param out the Problems directory
+     * @param setNames
+     * @throws IOException if the list cannot be read or written
+     */
+    private static void addSetNames(File out, List<String> setNames) throws IOException {
+        File list = new File(out, "ProblemSetList.txt");
+        Set<String> names = new LinkedHashSet<>();
+        if (list.isFile())
+            for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8))
+                if (!line.trim().isEmpty())
+                    names.add(line);
+        names.addAll(setNames);
+        Files.write(list.toPath(), names, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * An object being generated: an index into each attribute's vocabulary
+     * (-1 when it has no such attribute) and its links to earlier objects of
+     * the same figure.
+     */
+    private static class GeneratedObject {
+
+        int[] values;
+        int[][] relations;
+
+        GeneratedObject(int[] values) {
+            this.values = values;
+            relations = new int[RELATIONS.length][];
+        }
+    }
+
+    /**
+     * A figure being generated. Relations refer to other objects by their
+     * position in the figure.
+     */
+    private class Figure {
+
+        List<GeneratedObject> objects = new ArrayList<>();
+
+        int size() {
+            return objects.size();
+        }
+
+        void add(GeneratedObject object) {
+            for (int r = 0; r < RELATIONS.length; r++) {
+                List<Integer> targets = new ArrayList<>();
+                for (int i = 0; i < objects.size(); i++)
+                    if (random.nextDouble() < relationDensity)
+                        targets.add(i);
+                object.relations[r] = targets.stream().mapToInt(Integer::intValue).toArray();
+            }
+            objects.add(object);
+        }
+
+        Figure copy() {
+            Figure figure = new Figure();
+            for (GeneratedObject object : objects) {
+                GeneratedObject copy = new GeneratedObject(object.values.clone());
+                copy.relations = object.relations.clone();
+                figure.objects.add(copy);
+            }
+            return figure;
+        }
+
+        /**
+         * @return The figure after one step of the rules
+         */
+        Figure apply(int[] steps, int growth, boolean withAlignment) {
+            Figure figure = copy();
+            for (GeneratedObject object : figure.objects)
+                for (int a = 0; a < ATTRIBUTES.length; a++)
+                    if (object.values[a] >= 0)
+                        object.values[a] = (object.values[a] + steps[a]) % vocabularies[a].length;
+
+            for (int i = 0; i < growth; i++)
+                figure.add(randomObject(withAlignment));
+            for (int i = 0; i > growth && figure.size() > 1; i--)
+                figure.removeLast();
+            return figure;
+        }
+
+        void removeLast() {
+            int removed = objects.size() - 1;
+            objects.remove(removed);
+            for (GeneratedObject object : objects)
+                for (int r = 0; r < RELATIONS.length; r++)
+                    object.relations[r] = Arrays.stream(object.relations[r]).filter(i -> i != removed).toArray();
+        }
+
+        /**
+         * @return The figure's attributes regardless of object names, to tell answers apart
+         */
+        String signature() {
+            List<String> parts = new ArrayList<>();
+            for (GeneratedObject object : objects)
+                parts.add(Arrays.toString(object.values));
+            parts.sort(null);
+            return parts.toString();
+        }
+
+        void write(Writer data, String name, NameCounter names) throws IOException {
+            data.write(name);
+            data.write('\n');
+            String[] objectNames = new String[objects.size()];
+            for (int i = 0; i < objectNames.length; i++)
+                objectNames[i] = names.next();
+
+            for (int i = 0; i < objectNames.length; i++) {
+                GeneratedObject object = objects.get(i);
+                data.write('\t');
+                data.write(objectNames[i]);
+                data.write('\n');
+                for (int a = 0; a < ATTRIBUTES.length; a++) {
+                    if (object.values[a] < 0)
+                        continue;
+                    data.write("\t\t" + ATTRIBUTES[a] + ":" + vocabularies[a][object.values[a]] + "\n");
+                }
+                for (int r = 0; r < RELATIONS.length; r++) {
+                    int[] targets = object.relations[r];
+                    if (targets.length == 0)
+                        continue;
+                    StringBuilder line = new StringBuilder("\t\t").append(RELATIONS[r]).append(':');
+                    for (int t = 0; t < targets.length; t++) {
+                        if (t > 0)
+                            line.append(',');
+                        line.append(objectNames[targets[t]]);
+                    }
+                    data.write(line.append('\n').toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands out object names unique within a problem: a..z, then aa, ab, ...
+     */
+    private static class NameCounter {
+
+        private int next;
+
+        String next() {
+            int n = next++;
+            StringBuilder name = new StringBuilder();
+            do {
+                name.insert(0, (char) ('a' + n % 26));
+                n = n / 26 - 1;
+            } while (n >= 0);
+            return name.toString();
+        }
+    }
+}
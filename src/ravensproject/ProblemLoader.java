@@ -0,0 +1,59 @@
+package ravensproject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This class reads a single problem from its ProblemData.txt file. It reads
+ * the same format as ProblemSet, but one problem at a time, so callers can
+ * parse problems on demand instead of loading a whole set up front. Parsing
+ * is done by ProblemDataParser.
+ */
+public class ProblemLoader {
+
+    private static final String[] VISUAL_FIGURES_2X2 = {"A", "B", "C", "1", "2", "3", "4", "5", "6"};
+    private static final String[] VISUAL_FIGURES_3X3 = {"D", "E", "F", "G", "H", "7", "8"};
+
+    // Parsers reuse their read buffer, so each thread gets its own
+    private static final ThreadLocal<ProblemDataParser> PARSERS = ThreadLocal.withInitial(ProblemDataParser::new);
+
+    /**
+     * This method returns the ProblemData.txt file of a problem.
+     *
+     * @param setName
+     * @param problemName
+     * @return The problem's data file
+     */
+    public static File problemFile(String setName, String problemName) {
+        return new File("Problems" + File.separator + setName + File.separator + problemName
+                + File.separator + "ProblemData.txt");
+    }
+
+    /**
+     * This method loads a problem from the folder whose name is given in
+     * problemName inside the folder of its problem set.
+     *
+     * @param setName
+     * @param problemName
+     * @return The loaded problem
+     * @throws IOException if the problem's data file cannot be read or is malformed
+     */
+    public static RavensProblem loadProblem(String setName, String problemName) throws IOException {
+        return PARSERS.get().parse(problemFile(setName, problemName), setName, problemName);
+    }
+
+    /**
+     * This method adds the empty figures of a problem that only has a visual
+     * representation.
+     *
+     * @param problem
+     * @param setName
+     */
+    public static void addVisualFigures(RavensProblem problem, String setName) {
+        for (String name : VISUAL_FIGURES_2X2)
+            problem.getFigures().put(name, new RavensFigure(name, problem.getName(), setName));
+        if (problem.getProblemType().equals("3x3"))
+            for (String name : VISUAL_FIGURES_3X3)
+                problem.getFigures().put(name, new RavensFigure(name, problem.getName(), setName));
+    }
+}
@@ -9,25 +9,79 @@ import java.util.Map;
 public class Relationship {
 
     private SemanticNetwork semanticNetwork;
-    private Generator generator;
     private String name; //the relationship name i.e. "BC"
     private RavensFigure fig1, fig2;
     private Map<String, List<String>> relationship;
     private List<List<RavensObject>> objectPairs;
     private Map<String, List<String>> transformationMap;
     private int numObjDiff; //maybe move to scores in SemanticNetwork
+    private boolean optimal; //false if the matching ran out of budget
+    private int[] mapping; //column chosen for each row, null if nothing scored
 
-    // Todo - maybe pass in SemanticNetwork and Generator to recycle logic
     public Relationship(RavensFigure fig1, RavensFigure fig2) {
-        generator = new Generator();
-        semanticNetwork = new SemanticNetwork(generator);
-        this.fig1 = fig1;
-        this.fig2 = fig2;
+        this(fig1, fig2, new SemanticNetwork(new Generator<>()));
+    }
+
+    public Relationship(RavensFigure fig1, RavensFigure fig2, SemanticNetwork semanticNetwork) {
+        this(new CompiledFigure(fig1), new CompiledFigure(fig2), semanticNetwork);
+    }
+
+    public Relationship(CompiledFigure fig1, CompiledFigure fig2, SemanticNetwork semanticNetwork) {
+        this(fig1, fig2, semanticNetwork, semanticNetwork.formRelationships(fig1, fig2));
+    }
+
+    /**
+     * This constructor rebuilds a relationship from a mapping chosen earlier
+     * for figures with the same structure (see RelationshipCache), without
+     * searching again. The result is the same as matching the figures anew.
+     *
+     * @param fig1
+     * @param fig2
+     * @param semanticNetwork
+     * @param mapping the column chosen for each row, or an empty array if no mapping scored
+     */
+    public Relationship(CompiledFigure fig1, CompiledFigure fig2, SemanticNetwork semanticNetwork, int[] mapping) {
+        this(fig1, fig2, semanticNetwork, semanticNetwork.replayRelationships(fig1, fig2, mapping));
+    }
+
+    private Relationship(CompiledFigure fig1, CompiledFigure fig2, SemanticNetwork semanticNetwork,
+                         Map<String, List<String>> relationship) {
+        this.semanticNetwork = semanticNetwork;
+        this.fig1 = fig1.getFigure();
+        this.fig2 = fig2.getFigure();
         name = fig1.getName() + "-" + fig2.getName();
-        relationship = semanticNetwork.formRelationships(fig1, fig2);
+        this.relationship = relationship;
         objectPairs = semanticNetwork.getObjectPairs();
         transformationMap = semanticNetwork.getTransformationMap();
-        numObjDiff = fig2.getObjects().keySet().size() - fig1.getObjects().keySet().size();
+        optimal = semanticNetwork.isOptimal();
+        mapping = semanticNetwork.getMapping();
+        numObjDiff = fig2.size() - fig1.size();
+    }
+
+    private Relationship(Relationship shared, RavensFigure fig2) {
+        semanticNetwork = shared.semanticNetwork;
+        fig1 = shared.fig1;
+        this.fig2 = fig2;
+        name = fig1.getName() + "-" + fig2.getName();
+        relationship = shared.relationship;
+        objectPairs = shared.objectPairs;
+        transformationMap = shared.transformationMap;
+        optimal = shared.optimal;
+        mapping = shared.mapping;
+        numObjDiff = shared.numObjDiff;
+    }
+
+    /**
+     * This method reuses the relationship for a second figure that is
+     * structurally identical to this one's (see CompiledFigure.sameStructure).
+     * The matching is shared, so the object pairs still refer to the objects
+     * of this relationship's second figure.
+     *
+     * @param fig2 the identical figure
+     * @return The relationship from this one's first figure to fig2
+     */
+    public Relationship shareWith(RavensFigure fig2) {
+        return new Relationship(this, fig2);
     }
 
     public String getName() {
@@ -58,4 +112,16 @@ public class Relationship {
         return numObjDiff;
     }
 
+    public boolean isOptimal() {
+        return optimal;
+    }
+
+    /**
+     * @return The column chosen for each row (see SemanticNetwork.getMapping),
+     *         or null if no mapping scored above zero
+     */
+    public int[] getMapping() {
+        return mapping;
+    }
+
 }
@@ -0,0 +1,151 @@
+package ravensproject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This is a bounded cache of the object mappings chosen for pairs of figures.
+ * Entries are keyed by the canonical hashes of the ordered (figure, figure)
+ * pair (see CompiledFigure), so a pair repeats whenever two figures with the
+ * same objects and relations meet again, within a problem or in a later one,
+ * under whatever names. Like CorrespondenceStore, a mapping is kept as the
+ * canonical ranks of the paired objects, so the cache holds nothing of the
+ * problems it was filled from; a hit is turned back into object indexes of
+ * the figures at hand and the relationship is rebuilt from it, exactly as if
+ * the figures had been matched again.
+ * The least recently used entry is evicted once the size limit is reached.
+ * Hits, misses and evictions are counted so the amount of matching work saved
+ * can be reported.
+ */
+public class RelationshipCache {
+
+    // Rank stored for an added or deleted object
+    private static final short NONE = -1;
+
+    private int maxSize;
+    private LinkedHashMap<FigurePair, short[]> relationships; //rank pairs, NONE for padding
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public RelationshipCache(int maxSize) {
+        this.maxSize = maxSize;
+        relationships = new LinkedHashMap<FigurePair, short[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FigurePair, short[]> eldest) {
+                if (size() > RelationshipCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * This method looks up the mapping between two figures and counts the
+     * lookup as a hit or a miss.
+     *
+     * @param fig1
+     * @param fig2
+     * @return The column chosen for each row of fig1's objects, an empty
+     *         array if no mapping scored, or null if there is no entry
+     */
+    public synchronized int[] get(CompiledFigure fig1, CompiledFigure fig2) {
+        short[] ranks = relationships.get(new FigurePair(fig1, fig2));
+        if (ranks == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+
+        int n = ranks.length / 2;
+        int[] mapping = new int[n];
+        int paddedRow = fig1.size();
+        int paddedColumn = fig2.size();
+        for (int pair = 0; pair < n; pair++) {
+            int row = ranks[2 * pair] == NONE ? paddedRow++ : fig1.getObjectIndex(ranks[2 * pair]);
+            mapping[row] = ranks[2 * pair + 1] == NONE ? paddedColumn++ : fig2.getObjectIndex(ranks[2 * pair + 1]);
+        }
+        return mapping;
+    }
+
+    /**
+     * This method records the mapping a relationship was built from.
+     *
+     * @param fig1
+     * @param fig2
+     * @param relationship a relationship between fig1 and fig2
+     */
+    public synchronized void put(CompiledFigure fig1, CompiledFigure fig2, Relationship relationship) {
+        if (maxSize <= 0)
+            return;
+
+        int[] mapping = relationship.getMapping();
+        int n = mapping == null ? 0 : mapping.length;
+        short[] ranks = new short[2 * n];
+        for (int i = 0; i < n; i++) {
+            ranks[2 * i] = i < fig1.size() ? (short) fig1.getCanonicalRank(i) : NONE;
+            ranks[2 * i + 1] = mapping[i] < fig2.size() ? (short) fig2.getCanonicalRank(mapping[i]) : NONE;
+        }
+        relationships.put(new FigurePair(fig1, fig2), ranks);
+    }
+
+    public synchronized void clear() {
+        relationships.clear();
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public synchronized int size() {
+        return relationships.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * The canonical hashes of an ordered pair of figures.
+     */
+    private static class FigurePair {
+
+        private long high1, low1, high2, low2;
+
+        FigurePair(CompiledFigure fig1, CompiledFigure fig2) {
+            high1 = fig1.getCanonicalHigh();
+            low1 = fig1.getCanonicalLow();
+            high2 = fig2.getCanonicalHigh();
+            low2 = fig2.getCanonicalLow();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FigurePair))
+                return false;
+            FigurePair other = (FigurePair) o;
+            return high1 == other.high1 && low1 == other.low1 && high2 == other.high2 && low2 == other.low2;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high1 * 31 + high2);
+        }
+    }
+}
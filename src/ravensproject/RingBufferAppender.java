@@ -0,0 +1,105 @@
+package ravensproject;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, many-producer single-consumer queue of log lines,
+ * drained by one daemon thread that prints them in batches.
+ *
+ * Producers claim a sequence number with a compare-and-set on the tail and
+ * then publish their line into that slot; the consumer takes slots in
+ * sequence order, waiting for a claimed slot to be published. Producers never
+ * block or signal the consumer, which polls every millisecond when idle. A
+ * full buffer makes offer() fail, and the caller prints the line itself.
+ * Whatever is still buffered is printed when the JVM exits.
+ */
+public class RingBufferAppender {
+
+    private static final long IDLE_PARK_NANOS = 1000000L;
+    private static final int BATCH_CHARS = 1 << 16;
+
+    private AtomicReferenceArray<String> slots;
+    private int mask;
+    private AtomicLong tail;
+    private volatile long head;
+    private volatile long printed;
+    private PrintStream out;
+    private Thread consumer;
+
+    /**
+     * @param capacity number of lines buffered, rounded up to a power of two
+     * @param out where the lines are printed
+     */
+    public RingBufferAppender(int capacity, PrintStream out) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+        tail = new AtomicLong();
+        this.out = out;
+
+        consumer = new Thread(this::drain, "log-appender");
+        consumer.setDaemon(true);
+        consumer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "log-flush"));
+    }
+
+    /**
+     * @param line
+     * @return Whether the line was queued; false when the buffer is full
+     */
+    public boolean offer(String line) {
+        long sequence;
+        do {
+            sequence = tail.get();
+            if (sequence - head > mask)
+                return false;
+        } while (!tail.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, line);
+        return true;
+    }
+
+    /**
+     * This method waits until every line queued before the call has been printed.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (printed < target && consumer.isAlive())
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        out.flush();
+    }
+
+    private void drain() {
+        StringBuilder batch = new StringBuilder();
+        long next = head;
+        while (true) {
+            int slot = (int) next & mask;
+            String line = slots.get(slot);
+            if (line != null) {
+                slots.lazySet(slot, null);
+                batch.append(line).append(System.lineSeparator());
+                next++;
+                head = next;
+                if (batch.length() < BATCH_CHARS)
+                    continue;
+            }
+
+            // Print when the buffer runs dry or the batch is large
+            if (batch.length() > 0) {
+                out.print(batch);
+                out.flush();
+                batch.setLength(0);
+                printed = next;
+            }
+
+            if (line == null) {
+                if (next == tail.get())
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                else
+                    Thread.onSpinWait();
+            }
+        }
+    }
+}
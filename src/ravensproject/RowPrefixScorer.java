@@ -0,0 +1,101 @@
+package ravensproject;
+
+import java.util.List;
+
+/**
+ * This is a scorer for the last row of a matrix, where every candidate
+ * completes the same known prefix of the row. The tokens of the prefix are
+ * counted and scored against the complete rows once; a candidate is then
+ * scored by the tokens it adds to (or removes from) the prefix, so its cost
+ * depends on its own tokens and not on the length of the row. Scores equal
+ * TransformationVocabulary.score of the complete rows against the prefix
+ * plus the candidate's tokens.
+ *
+ * A scorer keeps scratch space between calls and must not be shared by
+ * threads.
+ */
+public class RowPrefixScorer {
+
+    private TransformationVocabulary vocabulary;
+    private int[][] references;
+    private int[] prefix;
+    private int prefixScore;
+
+    // Per-call count changes of the tokens a candidate touches
+    private int[] delta;
+    private boolean[] marked;
+    private int[] touched;
+
+    /**
+     * @param referenceTokens the tokens of each complete row
+     * @param prefixTokens the tokens of the known part of the last row
+     */
+    public RowPrefixScorer(List<List<String>> referenceTokens, List<String> prefixTokens) {
+        vocabulary = new TransformationVocabulary();
+        vocabulary.addAll(referenceTokens);
+        vocabulary.add(prefixTokens);
+
+        references = vocabulary.histograms(referenceTokens);
+        prefix = vocabulary.histogram(prefixTokens);
+        prefixScore = TransformationVocabulary.score(references, prefix);
+
+        delta = new int[vocabulary.size()];
+        marked = new boolean[vocabulary.size()];
+        touched = new int[vocabulary.size()];
+    }
+
+    /**
+     * @param addedTokens the tokens the candidate adds to the prefix
+     * @return The score of the prefix completed with the candidate
+     */
+    public int score(List<String> addedTokens) {
+        return score(addedTokens, List.of());
+    }
+
+    /**
+     * This method scores the prefix after adding and removing tokens. Removed
+     * tokens must be in the prefix.
+     *
+     * @param addedTokens the tokens the candidate adds to the prefix
+     * @param removedTokens the prefix tokens the candidate cancels out
+     * @return The score of the prefix completed with the candidate
+     */
+    public int score(List<String> addedTokens, List<String> removedTokens) {
+        int score = prefixScore;
+        int touchedCount = 0;
+        for (String token : addedTokens) {
+            int id = vocabulary.id(token);
+            if (id < 0) {
+                // Neither the rows nor the prefix have it: a leftover token against every row
+                score -= references.length;
+                continue;
+            }
+            delta[id]++;
+            if (!marked[id]) {
+                marked[id] = true;
+                touched[touchedCount++] = id;
+            }
+        }
+        for (String token : removedTokens) {
+            int id = vocabulary.id(token);
+            delta[id]--;
+            if (!marked[id]) {
+                marked[id] = true;
+                touched[touchedCount++] = id;
+            }
+        }
+
+        for (int i = 0; i < touchedCount; i++) {
+            int id = touched[i];
+            marked[id] = false;
+            if (delta[id] == 0)
+                continue;
+            for (int[] reference : references)
+                score += TransformationVocabulary.score(id, reference[id], prefix[id] + delta[id])
+                        - TransformationVocabulary.score(id, reference[id], prefix[id]);
+            delta[id] = 0;
+        }
+
+        return score;
+    }
+}
@@ -0,0 +1,80 @@
+package ravensproject;
+
+/**
+ * The plain Java similarity kernels. They run on every JVM and are the
+ * reference the vector kernels have to agree with.
+ */
+public class ScalarKernels implements SimilarityKernels {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public int xorCount(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] ^ b[i]);
+        return count;
+    }
+
+    @Override
+    public int andCount(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] & b[i]);
+        return count;
+    }
+
+    @Override
+    public int orCount(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] | b[i]);
+        return count;
+    }
+
+    @Override
+    public int andNotCount(long[] a, long[] b) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++)
+            count += Long.bitCount(a[i] & ~b[i]);
+        return count;
+    }
+
+    @Override
+    public long absDifference(byte[] a, byte[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += Math.abs((a[i] & 0xFF) - (b[i] & 0xFF));
+        return sum;
+    }
+
+    @Override
+    public double weightedOverlap(byte[] a, byte[] b, float[] weights) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++)
+            sum += weights[i] * Math.min(a[i] & 0xFF, b[i] & 0xFF);
+        return sum / 255.0;
+    }
+
+    @Override
+    public void rowProfile(byte[] pixels, int width, int height, int[] profile) {
+        for (int y = 0; y < height; y++) {
+            int sum = 0;
+            for (int x = 0, i = y * width; x < width; x++, i++)
+                sum += pixels[i] & 0xFF;
+            profile[y] = sum;
+        }
+    }
+
+    @Override
+    public void columnProfile(byte[] pixels, int width, int height, int[] profile) {
+        for (int x = 0; x < width; x++)
+            profile[x] = 0;
+        for (int y = 0; y < height; y++)
+            for (int x = 0, i = y * width; x < width; x++, i++)
+                profile[x] += pixels[i] & 0xFF;
+    }
+}
@@ -10,14 +10,37 @@ import java.util.Map;
  */
 public class SemanticNetwork {
 
-    private Generator generator;
+    // Bump whenever scorePair or the choice between tied mappings changes, so stored correspondences are not reused
+    public static final int RULES_VERSION = 3;
+
+    // Largest figure ASSIGNMENT searches exhaustively (7! = 5040 arrangements)
+    public static final int EXHAUSTIVE_LIMIT = 7;
+
+    private Generator<CompiledObject> generator;
+    private MatchMode matchMode;
+    private long nodeBudget;
+    private long timeBudgetNanos;
+    private boolean optimal;
     private List<List<RavensObject>> objectPairs;
     private Map<String, List<String>> transformationMap;
+    private int[] chosenMapping;
+    private SolveMetrics.Recording metrics;
+    private Deadline deadline;
+    private CorrespondenceStore correspondenceStore;
+    private boolean preserveRelations;
+
+    public SemanticNetwork(Generator<CompiledObject> generator) {
+        this(generator, MatchMode.ASSIGNMENT);
+    }
 
-    public SemanticNetwork(Generator generator) {
+    public SemanticNetwork(Generator<CompiledObject> generator, MatchMode matchMode) {
         this.generator = generator;
+        this.matchMode = matchMode;
+        nodeBudget = Long.MAX_VALUE;
         objectPairs = new ArrayList<>();
         transformationMap = new HashMap<>();
+        metrics = SolveMetrics.disabled();
+        deadline = Deadline.NONE;
     }
 
     /**
@@ -32,226 +55,714 @@ public class SemanticNetwork {
      */
     public Map<String, List<String>> formRelationships(RavensFigure figure1,
                                                        RavensFigure figure2) {
+        return formRelationships(new CompiledFigure(figure1), new CompiledFigure(figure2));
+    }
 
-        // Retrieve figure1's objects and figure2's objects for comparison
-        HashMap<String, RavensObject> figure1Objects = figure1.getObjects();
-        HashMap<String, RavensObject> figure2Objects = figure2.getObjects();
+    /**
+     * This method is used to score and return the best relationship
+     * between two compiled figure's objects.
+     *
+     * @param figure1
+     * @param figure2
+     * @return The map containing the objects and attribute changes
+     */
+    public Map<String, List<String>> formRelationships(CompiledFigure figure1,
+                                                       CompiledFigure figure2) {
+
+        objectPairs = new ArrayList<>();
+        transformationMap = new HashMap<>();
+        optimal = true;
+        chosenMapping = null;
 
         // Compare number of objects in each figure
-        List<String> figure1Names = new ArrayList<>(figure1Objects.keySet());
-        List<String> figure2Names = new ArrayList<>(figure2Objects.keySet());
-        while (figure1Names.size() != figure2Names.size()) {
-            if (figure1Names.size() > figure2Names.size())
-                figure2Names.add(null);
-            else if (figure1Names.size() < figure2Names.size())
-                figure1Names.add(null);
+        List<CompiledObject> figure1Objects = padObjects(figure1, figure2.size());
+        List<CompiledObject> figure2Objects = padObjects(figure2, figure1.size());
+
+        int n = figure1Objects.size();
+        long stageStart = metrics.start();
+
+        // A mapping stored for an identical figure pair is replayed without searching
+        int[] storedMapping = correspondenceStore != null ? correspondenceStore.get(figure1, figure2, matchMode, preserveRelations) : null;
+        if (storedMapping != null) {
+            metrics.count(SolveMetrics.Counter.CORRESPONDENCE_HITS, 1);
+            Map<String, List<String>> relationships = replayMapping(figure1, figure2, figure1Objects,
+                    figure2Objects, storedMapping);
+            metrics.stop(SolveMetrics.Stage.MAPPING, stageStart);
+            return relationships;
+        }
+
+        // Score every object in figure1 against every object in figure2 once.
+        // Padded (null) rows and columns stand for added and deleted objects.
+        PairScore[][] pairScores = new PairScore[n][n];
+        int[][] scores = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                pairScores[i][j] = scorePair(figure1Objects.get(i), figure2Objects.get(j),
+                        figure1.size(), figure2.size());
+                scores[i][j] = pairScores[i][j].getScore();
+            }
         }
+        metrics.count(SolveMetrics.Counter.PAIRS_COMPARED, (long) n * n);
+        metrics.stop(SolveMetrics.Stage.PAIR_SCORING, stageStart);
+
+        stageStart = metrics.start();
+
+        int[] mapping;
+        switch (matchMode) {
+            case EXHAUSTIVE:
+                mapping = matchExhaustive(figure2Objects, scores);
+                break;
+            case BRANCH_AND_BOUND:
+                BranchAndBoundMatcher matcher = new BranchAndBoundMatcher(nodeBudget, timeBudgetNanos);
+                matcher.setDeadline(deadline);
+                mapping = matcher.search(scores, figure1.getRelations(), figure2.getRelations());
+                optimal = matcher.isOptimal();
+                metrics.count(SolveMetrics.Counter.SEARCH_NODES, matcher.getNodes());
+                break;
+            case ASSIGNMENT:
+            default:
+                // Small figures are cheap to search exhaustively, which resolves ties as EXHAUSTIVE does
+                mapping = n <= EXHAUSTIVE_LIMIT ? matchExhaustive(figure2Objects, scores) : matchAssignment(scores);
+                break;
+        }
+
+        // Among equally scored mappings, prefer the one keeping the most spatial relations
+        if (preserveRelations)
+            preserveRelations(mapping, scores, figure1.getRelations(), figure2.getRelations());
+
+        metrics.stop(SolveMetrics.Stage.MATCHING, stageStart);
+
+        // Only mappings proven best are worth handing to later runs
+        if (correspondenceStore != null && optimal)
+            correspondenceStore.put(figure1, figure2, matchMode, preserveRelations, mapping);
 
-        List<String> sizeList = new ArrayList<>();
-        sizeList.add("very small");
-        sizeList.add("small");
-        sizeList.add("medium");
-        sizeList.add("large");
-        sizeList.add("very large");
-        sizeList.add("huge");
+        if (mapping == null)
+            return new HashMap<>();
 
-        // Get all permutations of figure2 for comparison to figure1
-        List<List<String>> figure2Permutations = generator.generatePermutations(figure2Names);
+        stageStart = metrics.start();
+        chosenMapping = mapping;
+        Map<String, List<String>> relationships = applyMapping(pairScores, mapping);
+        metrics.stop(SolveMetrics.Stage.MAPPING, stageStart);
+        return relationships;
+    }
+
+    /**
+     * This method rebuilds the relationship between two figures from a
+     * mapping chosen earlier for figures with the same structure, scoring
+     * only the mapped pairs instead of searching.
+     *
+     * @param figure1
+     * @param figure2
+     * @param mapping the column chosen for each row (see getMapping), or an
+     *                empty array if no mapping scored above zero
+     * @return The map containing the objects and attribute changes
+     */
+    public Map<String, List<String>> replayRelationships(CompiledFigure figure1, CompiledFigure figure2,
+                                                         int[] mapping) {
+        objectPairs = new ArrayList<>();
+        transformationMap = new HashMap<>();
+        optimal = true;
+        chosenMapping = null;
+
+        long stageStart = metrics.start();
+        Map<String, List<String>> relationships = replayMapping(figure1, figure2,
+                padObjects(figure1, figure2.size()), padObjects(figure2, figure1.size()), mapping);
+        metrics.stop(SolveMetrics.Stage.MAPPING, stageStart);
+        return relationships;
+    }
+
+    /**
+     * @param figure
+     * @param otherSize number of objects in the figure it is matched with
+     * @return The figure's objects, padded with nulls to the larger of the two sizes
+     */
+    private static List<CompiledObject> padObjects(CompiledFigure figure, int otherSize) {
+        List<CompiledObject> objects = new ArrayList<>(figure.getObjects());
+        while (objects.size() < otherSize)
+            objects.add(null);
+        return objects;
+    }
+
+    private Map<String, List<String>> replayMapping(CompiledFigure figure1, CompiledFigure figure2,
+                                                    List<CompiledObject> figure1Objects,
+                                                    List<CompiledObject> figure2Objects, int[] mapping) {
+        if (mapping.length == 0)
+            return new HashMap<>();
+
+        int n = mapping.length;
+        PairScore[][] pairScores = new PairScore[n][n];
+        for (int i = 0; i < n; i++)
+            pairScores[i][mapping[i]] = scorePair(figure1Objects.get(i), figure2Objects.get(mapping[i]),
+                    figure1.size(), figure2.size());
+        chosenMapping = mapping;
+        return applyMapping(pairScores, mapping);
+    }
+
+    /**
+     * This method tries every distinct arrangement of figure2's objects against
+     * figure1's objects and returns the best one. Between equally scored
+     * mappings it keeps the one Generator.generatePermutations would have
+     * reached first (see enumeratedBefore), so ties resolve as they did when
+     * every permutation was materialized. Padded (null) columns are
+     * interchangeable, so their arrangements are only tried once and rows
+     * mapped to a padded column all share its index. The search stops early
+     * with the best mapping so far when the deadline expires.
+     *
+     * @param figure2Objects figure2's objects, padded with nulls
+     * @param scores the pairwise score matrix
+     * @return The column chosen for each row, or null if no mapping scores above zero
+     */
+    private int[] matchExhaustive(List<CompiledObject> figure2Objects, int[][] scores) {
+        Permutations<CompiledObject> permutations = generator.permutations(figure2Objects);
 
         int bestScore = 0;
-        Map<String, List<String>> bestRelationships = new HashMap<>();
-        for (List<String> permutation : figure2Permutations) {
+        int[] bestMapping = null;
+        long evaluated = 0;
+        while (permutations.next()) {
+            evaluated++;
+
+            // Keep the best mapping so far once the problem's time is up
+            if ((evaluated & 0x3FF) == 0 && deadline.isExpired()) {
+                optimal = false;
+                break;
+            }
+
             int score = 0;
+            for (int i = 0; i < permutations.size(); i++)
+                score += scores[i][permutations.indexAt(i)];
+
+            // Update the best mapping if this current score is better than the best
+            if (score > bestScore || (score == bestScore && bestMapping != null
+                    && enumeratedBefore(permutations, bestMapping))) {
+                if (bestMapping == null)
+                    bestMapping = new int[permutations.size()];
+                for (int i = 0; i < permutations.size(); i++)
+                    bestMapping[i] = permutations.indexAt(i);
+                bestScore = score;
+            }
+        }
+        metrics.count(SolveMetrics.Counter.PERMUTATIONS, evaluated);
+
+        return bestMapping;
+    }
+
+    private static boolean enumeratedBefore(Permutations<CompiledObject> permutations, int[] mapping) {
+        int[] current = new int[permutations.size()];
+        int objects = 0;
+        for (int i = 0; i < current.length; i++) {
+            current[i] = permutations.indexAt(i);
+            if (permutations.get(i) != null)
+                objects++;
+        }
+        return enumeratedBefore(current, mapping, objects);
+    }
+
+    /**
+     * This method tells which of two mappings Generator.generatePermutations
+     * lists first. That enumeration inserts the first object into every
+     * position of each arrangement of the others, so arrangements are ordered
+     * by where the last object sits among the objects after it, then where
+     * the one before it sits among those after it, and so on down to the
+     * first object. Padded columns come after every object, and the padding
+     * copy listed first is always the one placed first.
+     *
+     * @param mapping the column chosen for each row
+     * @param other the column chosen for each row by another mapping
+     * @param objects the number of figure2 objects; columns from here on are padding
+     * @return Whether mapping comes before other in the enumeration
+     */
+    static boolean enumeratedBefore(int[] mapping, int[] other, int objects) {
+        int[] rows = new int[objects];
+        int[] otherRows = new int[objects];
+        for (int i = 0; i < mapping.length; i++) {
+            if (mapping[i] < objects)
+                rows[mapping[i]] = i;
+            if (other[i] < objects)
+                otherRows[other[i]] = i;
+        }
+
+        for (int k = objects - 1; k >= 0; k--) {
+            int place = placeAmongLater(mapping, rows[k], k);
+            int otherPlace = placeAmongLater(other, otherRows[k], k);
+            if (place != otherPlace)
+                return place < otherPlace;
+        }
+        return false;
+    }
 
-            Map<String, List<String>> relationships = new HashMap<>();
-            List<List<RavensObject>> pairs = new ArrayList<>();
-            Map<String, List<String>> transformations = new HashMap<>();
-            for (List<String> pair : (List<List<String>>)generator.formPairs(figure1Names, permutation)) {
-                RavensObject fig1Object = figure1Objects.get(pair.get(0));
-                RavensObject fig2Object = figure2Objects.get(pair.get(1));
-                List<String> fig1AttrList = new ArrayList<>();
-                List<String> fig2AttrList = new ArrayList<>();
-                List<String> transformationList = new ArrayList<>();
-
-                if (fig1Object == null && fig2Object != null) {
-                    fig2AttrList.add("added");
-                    transformationList.add("added");
-                } else if (fig1Object != null && fig2Object == null) {
-                    fig1AttrList.add("deleted");
-                    transformationList.add("deleted");
-                } else if (fig1Object != null && fig2Object != null) {
-
-                    //add only when pair exists (i.e. if no objects in pair are null)
-                    List<RavensObject> figurePair = new ArrayList<>();
-                    figurePair.add(fig1Object);
-                    figurePair.add(fig2Object);
-                    pairs.add(figurePair);
-
-                    HashMap<String, String> fig1Attributes = fig1Object.getAttributes();
-                    HashMap<String, String> fig2Attributes = fig2Object.getAttributes();
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "shape")) {
-                        score += 5;
-                        fig2AttrList.add("sameShape");
-                    } else if (fig1Attributes.get("shape") != null && fig2Attributes.get("shape") != null) {
-                        fig2AttrList.add("diffShape");
-                        transformationList.add("transform");
-                    }
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "size")) {
-                        score += 5; // Todo - maybe lower these scores
-                        fig2AttrList.add("sameSize");
-                    } else if (fig1Attributes.get("size") != null && fig2Attributes.get("size") != null) {
-                        score += 2;
-                        fig2AttrList.add("diffSize");
-                        if (sizeList.indexOf(fig1Attributes.get("size"))
-                                < sizeList.indexOf(fig2Attributes.get("size")))
-                            transformationList.add("grow");
-                        else if (sizeList.indexOf(fig1Attributes.get("size"))
-                                > sizeList.indexOf(fig2Attributes.get("size")))
-                            transformationList.add("shrink");
-                    }
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "width")) {
-                        fig2AttrList.add("sameWidth");
-                    } else if (fig1Attributes.get("width") != null && fig2Attributes.get("width") != null) {
-                        score += 2;
-                        fig2AttrList.add("diffWidth");
-                        if (sizeList.indexOf(fig1Attributes.get("width"))
-                                < sizeList.indexOf(fig2Attributes.get("width")))
-                            transformationList.add("widen");
-                        else if (sizeList.indexOf(fig1Attributes.get("width"))
-                                > sizeList.indexOf(fig2Attributes.get("width")))
-                            transformationList.add("compress");
-                    }
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "height")) {
-                        fig2AttrList.add("sameHeight");
-                    } else if (fig1Attributes.get("height") != null && fig2Attributes.get("height") != null) {
-                        score += 2;
-                        fig2AttrList.add("diffHeight");
-                        if (sizeList.indexOf(fig1Attributes.get("height"))
-                                < sizeList.indexOf(fig2Attributes.get("height")))
-                            transformationList.add("heighten");
-                        else if (sizeList.indexOf(fig1Attributes.get("height"))
-                                > sizeList.indexOf(fig2Attributes.get("height")))
-                            transformationList.add("shorten");
-                    }
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "fill")) {
-                        score += 5;
-                        fig2AttrList.add("sameFill");
-                    } else if (fig1Attributes.get("fill") != null && fig2Attributes.get("fill") != null) {
-                        score += 2;
-                        String fill = "diffFill";
-
-                        List<String> hasFill = new ArrayList<>();
-                        hasFill.add(fig1Attributes.get("fill"));
-                        hasFill.add(fig2Attributes.get("fill"));
-                        if (!hasFill.contains("yes") || !hasFill.contains("no")) // Todo - might be && and not ||...
-                            fill = determineFill(fig1Attributes.get("fill"), fig2Attributes.get("fill"));
-
-                        fig2AttrList.add(fill);
-                        if (fig1Attributes.get("fill").equals("yes") && fig2Attributes.get("fill").equals("no"))
-                            transformationList.add("unfill");
-                        else if (fig1Attributes.get("fill").equals("no") && fig2Attributes.get("fill").equals("yes"))
-                            transformationList.add("fill");
-                        else
-                            transformationList.add("fill-"+fill);
-                    }
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "alignment")) {
-                        score += 5;
-                        fig2AttrList.add("sameAlignment");
-                    } else if (fig1Attributes.get("alignment") != null && fig2Attributes.get("alignment") != null) {
-                        score += 2;
-                        String align = determineAlignment(
-                                fig1Attributes.get("alignment"), fig2Attributes.get("alignment")
-                        );
-                        fig2AttrList.add(align);
-                        transformationList.add("align-"+align);
-                    }
-
-                    if (compareAttributes(fig1Attributes, fig2Attributes, "angle")) {
-                        score += 5;
-                        fig2AttrList.add("sameAngle");
-                    } else if (fig1Attributes.get("angle") != null && fig2Attributes.get("angle") != null) {
-                        score += 2;
-                        int angleDiff = Math.abs(Integer.parseInt(fig2Attributes.get("angle"))
-                                - Integer.parseInt(fig1Attributes.get("angle")));
-                        fig2AttrList.add(Integer.toString(angleDiff));
-                        transformationList.add(Integer.toString(angleDiff));
-                    }
-
-                    //this won't work because proportion will change with each object added
-                    if (fig1Attributes.get("left-of") != null && fig2Attributes.get("left-of") != null) {
-                        String[] fig1LeftOf = fig1Attributes.get("left-of").split(",");
-                        String[] fig2LeftOf = fig1Attributes.get("left-of").split(",");
-                        double fig1Proportion = 1 - ((double) fig1LeftOf.length
-                                / (double) figure1Objects.keySet().size());
-                        double fig2Proportion = 1 - ((double) fig2LeftOf.length
-                                / (double) figure2Objects.keySet().size());
-
-                        if (fig2Proportion == fig1Proportion)
-                            score += 5;
-                    }
-
-                    if (fig1Attributes.get("above") != null && fig2Attributes.get("above") != null) {
-                        String[] fig1Above = fig1Attributes.get("above").split(",");
-                        String[] fig2Above = fig1Attributes.get("above").split(",");
-                        double fig1Proportion = 1 - ((double) fig1Above.length
-                                / (double) figure1Objects.keySet().size());
-                        double fig2Proportion = (double) fig2Above.length
-                                / (double) figure2Objects.keySet().size();
-                        if (fig1Proportion == fig2Proportion)
-                            score += 5;
-                    }
-
-                    // Todo - check if this is actually beneficial or if it is detrimental
-                    if (fig1Attributes.get("overlaps") != null && fig2Attributes.get("overlaps") != null) {
-                        String[] fig1Above = fig1Attributes.get("overlaps").split(",");
-                        String[] fig2Above = fig1Attributes.get("overlaps").split(",");
-                        double fig1Proportion = 1 - ((double) fig1Above.length
-                                / (double) figure1Objects.keySet().size());
-                        double fig2Proportion = (double) fig2Above.length
-                                / (double) figure2Objects.keySet().size();
-                        if (fig1Proportion == fig2Proportion)
-                            score += 5;
-                    }
+    /**
+     * @return The number of rows before the given row mapped to a column after k
+     */
+    private static int placeAmongLater(int[] mapping, int row, int k) {
+        int place = 0;
+        for (int i = 0; i < row; i++)
+            if (mapping[i] > k)
+                place++;
+        return place;
+    }
 
+    /**
+     * This method solves the pairing as an assignment problem over the score
+     * matrix. Like the exhaustive search, a mapping that scores nothing is
+     * not reported.
+     *
+     * @param scores the pairwise score matrix
+     * @return The column chosen for each row, or null if no mapping scores above zero
+     */
+    private int[] matchAssignment(int[][] scores) {
+        int[] mapping = new HungarianSolver().maximize(scores);
+
+        int score = 0;
+        for (int i = 0; i < mapping.length; i++)
+            score += scores[i][mapping[i]];
+
+        return score > 0 ? mapping : null;
+    }
 
+    /**
+     * This method swaps pairs of rows in a mapping whenever the swap keeps the
+     * mapping's score and preserves more of the figures' spatial relations,
+     * until no swap helps. The pairwise scores cannot see relations between
+     * objects, so this is how they decide between otherwise equal mappings.
+     *
+     * @param mapping the column chosen for each row, changed in place; may be null
+     * @param scores the pairwise score matrix
+     * @param relations1 figure1's spatial relations
+     * @param relations2 figure2's spatial relations
+     */
+    private void preserveRelations(int[] mapping, int[][] scores,
+                                   SpatialRelations relations1, SpatialRelations relations2) {
+        if (mapping == null || relations1.getEdgeCount() == 0 || relations2.getEdgeCount() == 0)
+            return;
+
+        int preserved = SpatialRelations.preservedEdges(relations1, relations2, mapping);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int i = 0; i < mapping.length; i++) {
+                for (int j = i + 1; j < mapping.length; j++) {
+                    if (mapping[i] == mapping[j] || scores[i][mapping[j]] + scores[j][mapping[i]]
+                            != scores[i][mapping[i]] + scores[j][mapping[j]])
+                        continue;
+
+                    swap(mapping, i, j);
+                    int swapped = SpatialRelations.preservedEdges(relations1, relations2, mapping);
+                    if (swapped > preserved) {
+                        preserved = swapped;
+                        improved = true;
+                    } else
+                        swap(mapping, i, j);
                 }
+            }
+        }
+    }
+
+    private static void swap(int[] mapping, int i, int j) {
+        int column = mapping[i];
+        mapping[i] = mapping[j];
+        mapping[j] = column;
+    }
+
+    /**
+     * This method builds the relationships, object pairs and transformations
+     * for the chosen mapping of figure1's objects onto figure2's objects.
+     *
+     * @param pairScores the pairwise comparison results
+     * @param mapping the column chosen for each row
+     * @return The map containing the objects and attribute changes
+     */
+    private Map<String, List<String>> applyMapping(PairScore[][] pairScores, int[] mapping) {
+        Map<String, List<String>> relationships = new HashMap<>();
+        List<List<RavensObject>> pairs = new ArrayList<>();
+        Map<String, List<String>> transformations = new HashMap<>();
+
+        for (int i = 0; i < mapping.length; i++) {
+            PairScore pairScore = pairScores[i][mapping[i]];
+            RavensObject fig1Object = pairScore.getFig1Object();
+            RavensObject fig2Object = pairScore.getFig2Object();
+
+            //add only when pair exists (i.e. if no objects in pair are null)
+            if (fig1Object != null && fig2Object != null) {
+                List<RavensObject> figurePair = new ArrayList<>();
+                figurePair.add(fig1Object);
+                figurePair.add(fig2Object);
+                pairs.add(figurePair);
+            }
+
+            if (fig1Object != null && !pairScore.getFig1AttrList().isEmpty())
+                relationships.put(fig1Object.getName(), pairScore.getFig1AttrList());
+            if (fig2Object != null && !pairScore.getFig2AttrList().isEmpty())
+                relationships.put(fig2Object.getName(), pairScore.getFig2AttrList());
+
+            String fig1Name = "";
+            String fig2Name = "";
+            if (fig1Object != null)
+                fig1Name = fig1Object.getName();
+            if (fig2Object != null)
+                fig2Name = fig2Object.getName();
+
+            transformations.put(fig1Name+"-"+fig2Name, pairScore.getTransformationList());
+        }
+
+        objectPairs = pairs;
+        transformationMap = transformations;
+
+        return relationships;
+    }
+
+    /**
+     * This method compares two compiled objects. The attributes held in the
+     * packed codes are compared with a few XOR and mask operations; objects
+     * that could not be compiled go through the attribute strings instead.
+     *
+     * @param fig1Object
+     * @param fig2Object
+     * @param figure1Size number of objects in figure1
+     * @param figure2Size number of objects in figure2
+     * @return The score and changes for the pair
+     */
+    public PairScore scorePair(CompiledObject fig1Object,
+                               CompiledObject fig2Object,
+                               int figure1Size,
+                               int figure2Size) {
+
+        if (fig1Object == null || fig2Object == null
+                || !fig1Object.isCompiled() || !fig2Object.isCompiled()) {
+            return scorePair(fig1Object == null ? null : fig1Object.getObject(),
+                    fig2Object == null ? null : fig2Object.getObject(),
+                    figure1Size, figure2Size);
+        }
+
+        PairScore pairScore = new PairScore(fig1Object.getObject(), fig2Object.getObject());
+        List<String> fig2AttrList = pairScore.getFig2AttrList();
+        List<String> transformationList = pairScore.getTransformationList();
+
+        long codes1 = fig1Object.getCodes();
+        long codes2 = fig2Object.getCodes();
+        long both = AttributeSchema.presentLanes(codes1) & AttributeSchema.presentLanes(codes2);
+        long changed = both & AttributeSchema.presentLanes(codes1 ^ codes2);
+        long same = both & ~changed;
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.SHAPE)) != 0) {
+            pairScore.addScore(5);
+            fig2AttrList.add("sameShape");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.SHAPE)) != 0) {
+            fig2AttrList.add("diffShape");
+            transformationList.add("transform");
+        }
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.SIZE)) != 0) {
+            pairScore.addScore(5);
+            fig2AttrList.add("sameSize");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.SIZE)) != 0) {
+            pairScore.addScore(2);
+            fig2AttrList.add("diffSize");
+            addOrdinalChange(transformationList, codes1, codes2, AttributeSchema.SIZE, "grow", "shrink");
+        }
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.WIDTH)) != 0) {
+            fig2AttrList.add("sameWidth");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.WIDTH)) != 0) {
+            pairScore.addScore(2);
+            fig2AttrList.add("diffWidth");
+            addOrdinalChange(transformationList, codes1, codes2, AttributeSchema.WIDTH, "widen", "compress");
+        }
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.HEIGHT)) != 0) {
+            fig2AttrList.add("sameHeight");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.HEIGHT)) != 0) {
+            pairScore.addScore(2);
+            fig2AttrList.add("diffHeight");
+            addOrdinalChange(transformationList, codes1, codes2, AttributeSchema.HEIGHT, "heighten", "shorten");
+        }
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.FILL)) != 0) {
+            pairScore.addScore(5);
+            fig2AttrList.add("sameFill");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.FILL)) != 0) {
+            pairScore.addScore(2);
+            String fig1Fill = AttributeSchema.value(AttributeSchema.FILL,
+                    AttributeSchema.lane(codes1, AttributeSchema.FILL));
+            String fig2Fill = AttributeSchema.value(AttributeSchema.FILL,
+                    AttributeSchema.lane(codes2, AttributeSchema.FILL));
+            addFillChange(fig2AttrList, transformationList, fig1Fill, fig2Fill);
+        }
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.ALIGNMENT)) != 0) {
+            pairScore.addScore(5);
+            fig2AttrList.add("sameAlignment");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.ALIGNMENT)) != 0) {
+            pairScore.addScore(2);
+            String align = determineAlignment(
+                    AttributeSchema.value(AttributeSchema.ALIGNMENT,
+                            AttributeSchema.lane(codes1, AttributeSchema.ALIGNMENT)),
+                    AttributeSchema.value(AttributeSchema.ALIGNMENT,
+                            AttributeSchema.lane(codes2, AttributeSchema.ALIGNMENT))
+            );
+            fig2AttrList.add(align);
+            transformationList.add("align-"+align);
+        }
+
+        if ((same & AttributeSchema.laneBit(AttributeSchema.ANGLE)) != 0) {
+            pairScore.addScore(5);
+            fig2AttrList.add("sameAngle");
+        } else if ((changed & AttributeSchema.laneBit(AttributeSchema.ANGLE)) != 0) {
+            pairScore.addScore(2);
+            int angleDiff = Math.abs(
+                    AttributeSchema.number(AttributeSchema.ANGLE, AttributeSchema.lane(codes2, AttributeSchema.ANGLE))
+                    - AttributeSchema.number(AttributeSchema.ANGLE, AttributeSchema.lane(codes1, AttributeSchema.ANGLE)));
+            fig2AttrList.add(Integer.toString(angleDiff));
+            transformationList.add(Integer.toString(angleDiff));
+        }
+
+        scoreRelations(fig1Object, fig2Object, figure1Size, figure2Size, pairScore);
+
+        // Todo - get rid of this and add "unchanged" for every fig attribute if unchanged
+        if (transformationList.isEmpty())
+            transformationList.add("unchanged");
+
+        return pairScore;
+    }
+
+    /**
+     * This method adds the transformation for an attribute measured on the
+     * size scale (size, width, height) that differs between two objects.
+     */
+    private void addOrdinalChange(List<String> transformationList, long codes1, long codes2,
+                                  int field, String increase, String decrease) {
+        int fig1Ordinal = AttributeSchema.ordinal(field, AttributeSchema.lane(codes1, field));
+        int fig2Ordinal = AttributeSchema.ordinal(field, AttributeSchema.lane(codes2, field));
+        if (fig1Ordinal < fig2Ordinal)
+            transformationList.add(increase);
+        else if (fig1Ordinal > fig2Ordinal)
+            transformationList.add(decrease);
+    }
+
+    /**
+     * This method adds the attribute change and transformation for a fill
+     * that differs between two objects.
+     */
+    private void addFillChange(List<String> fig2AttrList, List<String> transformationList,
+                               String fig1Fill, String fig2Fill) {
+        String fill = "diffFill";
+
+        List<String> hasFill = new ArrayList<>();
+        hasFill.add(fig1Fill);
+        hasFill.add(fig2Fill);
+        if (!hasFill.contains("yes") || !hasFill.contains("no")) // Todo - might be && and not ||...
+            fill = determineFill(fig1Fill, fig2Fill);
+
+        fig2AttrList.add(fill);
+        if (fig1Fill.equals("yes") && fig2Fill.equals("no"))
+            transformationList.add("unfill");
+        else if (fig1Fill.equals("no") && fig2Fill.equals("yes"))
+            transformationList.add("fill");
+        else
+            transformationList.add("fill-"+fill);
+    }
 
-                // Todo - get rid of this and add "unchanged" for every fig attribute if unchanged
-                if (transformationList.isEmpty())
-                    transformationList.add("unchanged");
+    /**
+     * This method compares a single object from figure1 with a single object
+     * from figure2 and records the score, attribute changes and transformations
+     * for the pair. Either object may be null for added or deleted objects.
+     *
+     * @param fig1Object
+     * @param fig2Object
+     * @param figure1Size number of objects in figure1
+     * @param figure2Size number of objects in figure2
+     * @return The score and changes for the pair
+     */
+    public PairScore scorePair(RavensObject fig1Object,
+                               RavensObject fig2Object,
+                               int figure1Size,
+                               int figure2Size) {
+
+        PairScore pairScore = new PairScore(fig1Object, fig2Object);
+        List<String> fig1AttrList = pairScore.getFig1AttrList();
+        List<String> fig2AttrList = pairScore.getFig2AttrList();
+        List<String> transformationList = pairScore.getTransformationList();
+
+        if (fig1Object == null && fig2Object != null) {
+            fig2AttrList.add("added");
+            transformationList.add("added");
+        } else if (fig1Object != null && fig2Object == null) {
+            fig1AttrList.add("deleted");
+            transformationList.add("deleted");
+        } else if (fig1Object != null && fig2Object != null) {
+
+            HashMap<String, String> fig1Attributes = fig1Object.getAttributes();
+            HashMap<String, String> fig2Attributes = fig2Object.getAttributes();
+
+            if (compareAttributes(fig1Attributes, fig2Attributes, "shape")) {
+                pairScore.addScore(5);
+                fig2AttrList.add("sameShape");
+            } else if (fig1Attributes.get("shape") != null && fig2Attributes.get("shape") != null) {
+                fig2AttrList.add("diffShape");
+                transformationList.add("transform");
+            }
 
-                if (fig1Object != null && !fig1AttrList.isEmpty())
-                    relationships.put(fig1Object.getName(), fig1AttrList);
-                if (fig2Object != null && !fig2AttrList.isEmpty())
-                    relationships.put(fig2Object.getName(), fig2AttrList);
+            if (compareAttributes(fig1Attributes, fig2Attributes, "size")) {
+                pairScore.addScore(5); // Todo - maybe lower these scores
+                fig2AttrList.add("sameSize");
+            } else if (fig1Attributes.get("size") != null && fig2Attributes.get("size") != null) {
+                pairScore.addScore(2);
+                fig2AttrList.add("diffSize");
+                if (AttributeSchema.SIZE_LIST.indexOf(fig1Attributes.get("size"))
+                        < AttributeSchema.SIZE_LIST.indexOf(fig2Attributes.get("size")))
+                    transformationList.add("grow");
+                else if (AttributeSchema.SIZE_LIST.indexOf(fig1Attributes.get("size"))
+                        > AttributeSchema.SIZE_LIST.indexOf(fig2Attributes.get("size")))
+                    transformationList.add("shrink");
+            }
 
-                String fig1Name = "";
-                String fig2Name = "";
-                if (fig1Object != null)
-                    fig1Name = fig1Object.getName();
-                if (fig2Object != null)
-                    fig2Name = fig2Object.getName();
+            if (compareAttributes(fig1Attributes, fig2Attributes, "width")) {
+                fig2AttrList.add("sameWidth");
+            } else if (fig1Attributes.get("width") != null && fig2Attributes.get("width") != null) {
+                pairScore.addScore(2);
+                fig2AttrList.add("diffWidth");
+                if (AttributeSchema.SIZE_LIST.indexOf(fig1Attributes.get("width"))
+                        < AttributeSchema.SIZE_LIST.indexOf(fig2Attributes.get("width")))
+                    transformationList.add("widen");
+                else if (AttributeSchema.SIZE_LIST.indexOf(fig1Attributes.get("width"))
+                        > AttributeSchema.SIZE_LIST.indexOf(fig2Attributes.get("width")))
+                    transformationList.add("compress");
+            }
 
-                transformations.put(fig1Name+"-"+fig2Name, transformationList);
+            if (compareAttributes(fig1Attributes, fig2Attributes, "height")) {
+                fig2AttrList.add("sameHeight");
+            } else if (fig1Attributes.get("height") != null && fig2Attributes.get("height") != null) {
+                pairScore.addScore(2);
+                fig2AttrList.add("diffHeight");
+                if (AttributeSchema.SIZE_LIST.indexOf(fig1Attributes.get("height"))
+                        < AttributeSchema.SIZE_LIST.indexOf(fig2Attributes.get("height")))
+                    transformationList.add("heighten");
+                else if (AttributeSchema.SIZE_LIST.indexOf(fig1Attributes.get("height"))
+                        > AttributeSchema.SIZE_LIST.indexOf(fig2Attributes.get("height")))
+                    transformationList.add("shorten");
             }
 
-            // Update the best relationship if this current score is better than the best
-            if (score > bestScore) {
-                bestRelationships = relationships;
-                objectPairs = pairs;
-                transformationMap = transformations;
-                bestScore = score;
+            if (compareAttributes(fig1Attributes, fig2Attributes, "fill")) {
+                pairScore.addScore(5);
+                fig2AttrList.add("sameFill");
+            } else if (fig1Attributes.get("fill") != null && fig2Attributes.get("fill") != null) {
+                pairScore.addScore(2);
+                addFillChange(fig2AttrList, transformationList,
+                        fig1Attributes.get("fill"), fig2Attributes.get("fill"));
             }
 
+            if (compareAttributes(fig1Attributes, fig2Attributes, "alignment")) {
+                pairScore.addScore(5);
+                fig2AttrList.add("sameAlignment");
+            } else if (fig1Attributes.get("alignment") != null && fig2Attributes.get("alignment") != null) {
+                pairScore.addScore(2);
+                String align = determineAlignment(
+                        fig1Attributes.get("alignment"), fig2Attributes.get("alignment")
+                );
+                fig2AttrList.add(align);
+                transformationList.add("align-"+align);
+            }
+
+            if (compareAttributes(fig1Attributes, fig2Attributes, "angle")) {
+                pairScore.addScore(5);
+                fig2AttrList.add("sameAngle");
+            } else if (fig1Attributes.get("angle") != null && fig2Attributes.get("angle") != null) {
+                pairScore.addScore(2);
+                int angleDiff = Math.abs(Integer.parseInt(fig2Attributes.get("angle"))
+                        - Integer.parseInt(fig1Attributes.get("angle")));
+                fig2AttrList.add(Integer.toString(angleDiff));
+                transformationList.add(Integer.toString(angleDiff));
+            }
+
+            scoreRelations(fig1Attributes, fig2Attributes, figure1Size, figure2Size, pairScore);
         }
 
-        return bestRelationships;
+        // Todo - get rid of this and add "unchanged" for every fig attribute if unchanged
+        if (transformationList.isEmpty())
+            transformationList.add("unchanged");
+
+        return pairScore;
+    }
+
+    /**
+     * This method scores the spatial relations (left-of, above, overlaps) of a
+     * pair of objects from the attribute strings, for objects that could not
+     * be compiled.
+     *
+     * @param fig1Attributes
+     * @param fig2Attributes
+     * @param figure1Size number of objects in figure1
+     * @param figure2Size number of objects in figure2
+     * @param pairScore the pair to add the score to
+     */
+    private void scoreRelations(HashMap<String, String> fig1Attributes,
+                                HashMap<String, String> fig2Attributes,
+                                int figure1Size,
+                                int figure2Size,
+                                PairScore pairScore) {
+        scoreRelations(relationCount(fig1Attributes, 0), relationCount(fig2Attributes, 0),
+                relationCount(fig1Attributes, 1), relationCount(fig2Attributes, 1),
+                relationCount(fig1Attributes, 2), relationCount(fig2Attributes, 2),
+                figure1Size, figure2Size, pairScore);
+    }
+
+    /**
+     * This method scores the spatial relations of a pair of compiled objects
+     * from the relation counts taken when they were compiled.
+     */
+    private void scoreRelations(CompiledObject fig1Object,
+                                CompiledObject fig2Object,
+                                int figure1Size,
+                                int figure2Size,
+                                PairScore pairScore) {
+        scoreRelations(fig1Object.getRelationCount(0), fig2Object.getRelationCount(0),
+                fig1Object.getRelationCount(1), fig2Object.getRelationCount(1),
+                fig1Object.getRelationCount(2), fig2Object.getRelationCount(2),
+                figure1Size, figure2Size, pairScore);
+    }
+
+    /**
+     * This method scores the spatial relations from the number of objects
+     * each relation names on either side, -1 where an object does not have
+     * the relation.
+     */
+    private void scoreRelations(int fig1LeftOf, int fig2LeftOf, int fig1Above, int fig2Above,
+                                int fig1Overlaps, int fig2Overlaps, int figure1Size, int figure2Size,
+                                PairScore pairScore) {
+
+        //this won't work because proportion will change with each object added
+        if (fig1LeftOf >= 0 && fig2LeftOf >= 0) {
+            double fig1Proportion = 1 - ((double) fig1LeftOf
+                    / (double) figure1Size);
+            double fig2Proportion = 1 - ((double) fig2LeftOf
+                    / (double) figure2Size);
+
+            if (fig2Proportion == fig1Proportion)
+                pairScore.addScore(5);
+        }
+
+        if (fig1Above >= 0 && fig2Above >= 0) {
+            double fig1Proportion = 1 - ((double) fig1Above
+                    / (double) figure1Size);
+            double fig2Proportion = (double) fig2Above
+                    / (double) figure2Size;
+            if (fig1Proportion == fig2Proportion)
+                pairScore.addScore(5);
+        }
+
+        // Todo - check if this is actually beneficial or if it is detrimental
+        if (fig1Overlaps >= 0 && fig2Overlaps >= 0) {
+            double fig1Proportion = 1 - ((double) fig1Overlaps
+                    / (double) figure1Size);
+            double fig2Proportion = (double) fig2Overlaps
+                    / (double) figure2Size;
+            if (fig1Proportion == fig2Proportion)
+                pairScore.addScore(5);
+        }
+    }
+
+    private int relationCount(HashMap<String, String> attributes, int relation) {
+        String targets = attributes.get(SpatialRelations.NAMES[relation]);
+        return targets == null ? -1 : targets.split(",").length;
     }
 
     /**
@@ -379,10 +890,93 @@ public class SemanticNetwork {
         return Integer.toString(change);
     }
 
+    /**
+     * @param metrics the recording of the solve this network is matching for
+     */
+    public void setMetrics(SolveMetrics.Recording metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param deadline the deadline of the problem the figures belong to
+     */
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @param correspondenceStore the store to look mappings up in and record them to, or null for none
+     */
+    public void setCorrespondenceStore(CorrespondenceStore correspondenceStore) {
+        this.correspondenceStore = correspondenceStore;
+    }
+
+    /**
+     * Sets whether ties between equally scored mappings are broken by the
+     * number of spatial relations they preserve.
+     *
+     * @param preserveRelations
+     */
+    public void setPreserveRelations(boolean preserveRelations) {
+        this.preserveRelations = preserveRelations;
+    }
+
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    public void setMatchMode(MatchMode matchMode) {
+        this.matchMode = matchMode;
+    }
+
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+
+    /**
+     * Sets the maximum number of search nodes the branch-and-bound mode
+     * may expand per figure pair.
+     *
+     * @param nodeBudget
+     */
+    public void setNodeBudget(long nodeBudget) {
+        this.nodeBudget = nodeBudget;
+    }
+
+    public long getTimeBudgetNanos() {
+        return timeBudgetNanos;
+    }
+
+    /**
+     * Sets the maximum time the branch-and-bound mode may search per
+     * figure pair, or 0 for no limit.
+     *
+     * @param timeBudgetNanos
+     */
+    public void setTimeBudgetNanos(long timeBudgetNanos) {
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
+
+    /**
+     * @return Whether the last call to formRelationships is proven to have found the best mapping
+     */
+    public boolean isOptimal() {
+        return optimal;
+    }
+
     public List<List<RavensObject>> getObjectPairs() {
         return objectPairs;
     }
 
+    /**
+     * @return The column chosen for each row of the figures last matched,
+     *         with padded rows and columns past each figure's objects, or
+     *         null if no mapping scored above zero
+     */
+    public int[] getMapping() {
+        return chosenMapping;
+    }
+
     public Map<String, List<String>> getTransformationMap() {
         return transformationMap;
     }
@@ -0,0 +1,148 @@
+package ravensproject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counts of correct, incorrect and skipped answers for a problem set.
+ * Problems are counted as they are answered, so the totals are available
+ * without keeping the problems around. Safe to update from several threads.
+ */
+public class SetTotals {
+
+    private AtomicInteger correct;
+    private AtomicInteger incorrect;
+    private AtomicInteger skipped;
+    private AtomicInteger timeouts;
+    private AtomicInteger filtered;
+    private AtomicInteger filterMisses;
+    private AtomicLong cacheHits;
+    private AtomicLong cacheMisses;
+    private AtomicLong cacheEvictions;
+
+    public SetTotals() {
+        correct = new AtomicInteger();
+        incorrect = new AtomicInteger();
+        skipped = new AtomicInteger();
+        timeouts = new AtomicInteger();
+        filtered = new AtomicInteger();
+        filterMisses = new AtomicInteger();
+        cacheHits = new AtomicLong();
+        cacheMisses = new AtomicLong();
+        cacheEvictions = new AtomicLong();
+    }
+
+    /**
+     * This method counts the result of a problem that has been answered.
+     *
+     * @param problem
+     */
+    public void record(RavensProblem problem) {
+        switch (problem.getCorrect()) {
+            case "Correct":
+                correct.incrementAndGet();
+                break;
+            case "Incorrect":
+                incorrect.incrementAndGet();
+                break;
+            default:
+                skipped.incrementAndGet();
+                break;
+        }
+    }
+
+    /**
+     * This method counts a problem whose answer was given after its time
+     * budget ran out.
+     */
+    public void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    /**
+     * @return The number of problems that ran out of their time budget
+     */
+    public int getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * This method counts the candidates the Agent's filters dropped from a
+     * problem, and whether the correct answer was among them.
+     *
+     * @param count the number of candidates dropped
+     * @param missed whether the correct answer was dropped
+     */
+    public void recordFiltered(int count, boolean missed) {
+        filtered.addAndGet(count);
+        if (missed)
+            filterMisses.incrementAndGet();
+    }
+
+    /**
+     * @return The number of candidates the Agent's filters dropped
+     */
+    public int getFiltered() {
+        return filtered.get();
+    }
+
+    /**
+     * @return The number of problems whose correct answer the Agent's filters dropped
+     */
+    public int getFilterMisses() {
+        return filterMisses.get();
+    }
+
+    /**
+     * This method counts a problem that could not be loaded as skipped.
+     */
+    public void recordSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * This method counts the relationship cache lookups made while solving a
+     * problem.
+     *
+     * @param hits
+     * @param misses
+     * @param evictions
+     */
+    public void recordCache(long hits, long misses, long evictions) {
+        cacheHits.addAndGet(hits);
+        cacheMisses.addAndGet(misses);
+        cacheEvictions.addAndGet(evictions);
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    public long getCacheEvictions() {
+        return cacheEvictions.get();
+    }
+
+    /**
+     * Returns the number of problems with the given result, matching
+     * ProblemSet.getTotal.
+     *
+     * @param result "Correct", "Incorrect" or "Skipped"
+     * @return The number of problems with that result
+     */
+    public int getTotal(String result) {
+        switch (result) {
+            case "Correct":
+                return correct.get();
+            case "Incorrect":
+                return incorrect.get();
+            case "Skipped":
+                return skipped.get();
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ravensproject;
+
+/**
+ * The inner loops used to compare figure images, on either packed bitmaps
+ * (FigureBitmap words, one bit per pixel) or byte-per-pixel buffers holding
+ * an unsigned darkness from 0 (white) to 255 (black).
+ *
+ * There are two implementations: ScalarKernels, which runs everywhere, and
+ * VectorKernels, which uses the jdk.incubator.vector API. VectorKernels is
+ * kept in the src-vector source tree because it only compiles and runs with
+ * --add-modules jdk.incubator.vector; get() picks it when it is on the class
+ * path and the module is present, and falls back to ScalarKernels otherwise.
+ * Setting -Dravens.vectorKernels=false forces the scalar kernels.
+ */
+public interface SimilarityKernels {
+
+    /**
+     * @return The name of the implementation, for logs and benchmarks
+     */
+    String getName();
+
+    /**
+     * @param a
+     * @param b packed pixels of the same length as a
+     * @return The number of bits set in a XOR b
+     */
+    int xorCount(long[] a, long[] b);
+
+    /**
+     * @param a
+     * @param b packed pixels of the same length as a
+     * @return The number of bits set in a AND b
+     */
+    int andCount(long[] a, long[] b);
+
+    /**
+     * @param a
+     * @param b packed pixels of the same length as a
+     * @return The number of bits set in a OR b
+     */
+    int orCount(long[] a, long[] b);
+
+    /**
+     * @param a
+     * @param b packed pixels of the same length as a
+     * @return The number of bits set in a AND NOT b
+     */
+    int andNotCount(long[] a, long[] b);
+
+    /**
+     * @param a
+     * @param b darkness of the same length as a
+     * @return The sum of the absolute differences of the pixels
+     */
+    long absDifference(byte[] a, byte[] b);
+
+    /**
+     * This method measures how much dark the two buffers have in common,
+     * counting each pixel's shared darkness (the smaller of the two) times
+     * its weight.
+     *
+     * @param a
+     * @param b darkness of the same length as a
+     * @param weights per-pixel weights of the same length as a
+     * @return The weighted overlap, with full darkness counting as 1
+     */
+    double weightedOverlap(byte[] a, byte[] b, float[] weights);
+
+    /**
+     * @param pixels darkness, row after row
+     * @param width
+     * @param height
+     * @param profile receives the total darkness of each of the height rows
+     */
+    void rowProfile(byte[] pixels, int width, int height, int[] profile);
+
+    /**
+     * @param pixels darkness, row after row
+     * @param width
+     * @param height
+     * @param profile receives the total darkness of each of the width columns
+     */
+    void columnProfile(byte[] pixels, int width, int height, int[] profile);
+
+    /**
+     * @return The kernels chosen for this JVM
+     */
+    static SimilarityKernels get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * This class picks the kernels the first time they are asked for.
+     */
+    final class Holder {
+
+        static final SimilarityKernels INSTANCE = choose();
+
+        private Holder() {
+        }
+
+        private static SimilarityKernels choose() {
+            if (Boolean.parseBoolean(System.getProperty("ravens.vectorKernels", "true"))) {
+                try {
+                    return (SimilarityKernels) Class.forName("ravensproject.VectorKernels")
+                            .getDeclaredConstructor().newInstance();
+                } catch (ClassNotFoundException | NoClassDefFoundError e) {
+                    // Not compiled in, or started without --add-modules jdk.incubator.vector
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    Log.warn(() -> "Vector kernels failed to start, using scalar kernels: " + e);
+                }
+            }
+            return new ScalarKernels();
+        }
+    }
+}
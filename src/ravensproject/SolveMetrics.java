@@ -0,0 +1,194 @@
+package ravensproject;
+
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-stage timings and work counters for Agent.Solve, kept per problem type.
+ *
+ * Each solve gets a Recording that its stages add their time and counts to,
+ * from whatever thread they run on. When the solve finishes, every stage time
+ * and counter of the recording goes into that problem type's histograms, so
+ * percentiles are over solves. Relationship stages run in parallel in
+ * parallel-solve mode, so their times are the sum over the relationships
+ * built, not wall time.
+ *
+ * Metrics are off unless -Dravens.metrics=true. The flag is a static final,
+ * so with metrics off every call on the shared disabled recording is a
+ * constant-folded no-op and nothing is allocated. With metrics on, the
+ * histograms are written to SolveMetrics.csv in the working directory, next
+ * to ProblemResults.csv, when the JVM exits, whichever driver ran the solves.
+ */
+public class SolveMetrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("ravens.metrics");
+
+    /**
+     * The timed stages of a solve. The first group is timed in Agent.Solve,
+     * the second inside SemanticNetwork.formRelationships.
+     */
+    public enum Stage {
+        MATRIX, LR_RELATIONSHIPS, UD_RELATIONSHIPS, DIAGONAL_RELATIONSHIPS, ANSWER_RELATIONSHIPS,
+        SCORING, SELECTION, TOTAL,
+        PAIR_SCORING, MATCHING, MAPPING
+    }
+
+    /**
+     * The counted units of work of a solve.
+     */
+    public enum Counter {
+        RELATIONSHIPS_BUILT, RELATIONSHIP_CACHE_HITS, PAIRS_COMPARED, PERMUTATIONS, SEARCH_NODES,
+        OBJECT_COUNT_FILTERED, SHAPES_FILTERED, CORRESPONDENCE_HITS
+    }
+
+    private static final Recording DISABLED = new Recording(null);
+    private static final Map<String, TypeMetrics> TYPES = new ConcurrentHashMap<>();
+
+    static {
+        if (ENABLED)
+            Runtime.getRuntime().addShutdownHook(new Thread(SolveMetrics::writeOnExit, "solve-metrics"));
+    }
+
+    private SolveMetrics() {
+    }
+
+    /**
+     * @param problemType
+     * @return A recording for one solve, or the shared no-op recording when metrics are off
+     */
+    public static Recording begin(String problemType) {
+        return ENABLED ? new Recording(problemType) : DISABLED;
+    }
+
+    /**
+     * @return The no-op recording, for code running outside a solve
+     */
+    public static Recording disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * This method adds a finished solve's stage times and counts to the
+     * histograms of its problem type.
+     *
+     * @param recording
+     */
+    public static void finish(Recording recording) {
+        if (!ENABLED || recording == DISABLED)
+            return;
+        TypeMetrics metrics = TYPES.computeIfAbsent(recording.problemType, type -> new TypeMetrics());
+        for (Stage stage : Stage.values())
+            metrics.stages[stage.ordinal()].record(recording.stageNanos.get(stage.ordinal()));
+        for (Counter counter : Counter.values())
+            metrics.counters[counter.ordinal()].record(recording.counts.get(counter.ordinal()));
+    }
+
+    /**
+     * This method forgets everything recorded so far.
+     */
+    public static void reset() {
+        TYPES.clear();
+    }
+
+    /**
+     * This method writes one line per problem type and stage or counter:
+     * stage times in microseconds and counters in units of work per solve.
+     *
+     * @param fileName
+     * @throws FileNotFoundException if the file cannot be created
+     */
+    public static void writeCsv(String fileName) throws FileNotFoundException {
+        try (PrintWriter out = new PrintWriter(fileName)) {
+            out.println("Problem Type,Metric,Unit,Solves,Total,Mean,p50,p95,p99,Max");
+            for (Map.Entry<String, TypeMetrics> entry : new TreeMap<>(TYPES).entrySet()) {
+                TypeMetrics metrics = entry.getValue();
+                for (Stage stage : Stage.values())
+                    writeLine(out, entry.getKey(), stage.name(), "us", metrics.stages[stage.ordinal()], 1000.0);
+                for (Counter counter : Counter.values())
+                    writeLine(out, entry.getKey(), counter.name(), "count", metrics.counters[counter.ordinal()], 1.0);
+            }
+        }
+    }
+
+    private static void writeOnExit() {
+        try {
+            writeCsv("SolveMetrics.csv");
+        } catch (FileNotFoundException ex) {
+            Log.error(() -> "Unable to create metrics file: " + ex);
+        }
+    }
+
+    private static void writeLine(PrintWriter out, String problemType, String metric, String unit,
+                                  LatencyHistogram histogram, double divisor) {
+        out.printf("%s,%s,%s,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f%n", problemType, metric, unit,
+                histogram.getCount(), histogram.getSum() / divisor, histogram.getMean() / divisor,
+                histogram.getPercentile(50) / divisor, histogram.getPercentile(95) / divisor,
+                histogram.getPercentile(99) / divisor, histogram.getMax() / divisor);
+    }
+
+    /**
+     * The stage times and counts of one solve. Stages may run on several
+     * threads at once, so both are kept in atomic arrays.
+     */
+    public static class Recording {
+
+        private String problemType;
+        private AtomicLongArray stageNanos;
+        private AtomicLongArray counts;
+
+        private Recording(String problemType) {
+            this.problemType = problemType;
+            if (problemType != null) {
+                stageNanos = new AtomicLongArray(Stage.values().length);
+                counts = new AtomicLongArray(Counter.values().length);
+            }
+        }
+
+        /**
+         * @return The start time to pass to stop()
+         */
+        public long start() {
+            return ENABLED ? System.nanoTime() : 0;
+        }
+
+        /**
+         * @param stage
+         * @param start the value start() returned when the stage began
+         */
+        public void stop(Stage stage, long start) {
+            if (ENABLED && stageNanos != null)
+                stageNanos.addAndGet(stage.ordinal(), System.nanoTime() - start);
+        }
+
+        /**
+         * @param counter
+         * @param amount
+         */
+        public void count(Counter counter, long amount) {
+            if (ENABLED && counts != null)
+                counts.addAndGet(counter.ordinal(), amount);
+        }
+    }
+
+    /**
+     * The histograms of one problem type.
+     */
+    private static class TypeMetrics {
+
+        private LatencyHistogram[] stages;
+        private LatencyHistogram[] counters;
+
+        TypeMetrics() {
+            stages = new LatencyHistogram[Stage.values().length];
+            for (int i = 0; i < stages.length; i++)
+                stages[i] = new LatencyHistogram();
+            counters = new LatencyHistogram[Counter.values().length];
+            for (int i = 0; i < counters.length; i++)
+                counters[i] = new LatencyHistogram();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ravensproject;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The spatial relations (left-of, above, overlaps, inside) between the
+ * objects of a figure, built once when the figure is compiled. Each relation
+ * is an adjacency bitset per object over the objects' indexes, so the
+ * relations a mapping between two figures preserves can be counted with AND
+ * and popcount instead of splitting and comparing the attribute strings.
+ * Names that do not belong to an object of the figure are ignored.
+ */
+public class SpatialRelations {
+
+    public static final String[] NAMES = {"left-of", "above", "overlaps", "inside"};
+
+    private int size;
+    private int words;
+    private long[][][] adjacency; //[relation][object][word]
+    private int edges;
+
+    /**
+     * @param objects the figure's objects, in the order of their indexes
+     */
+    public SpatialRelations(List<CompiledObject> objects) {
+        size = objects.size();
+        words = (size + 63) >>> 6;
+        adjacency = new long[NAMES.length][size][words];
+
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            indexes.put(objects.get(i).getName(), i);
+
+        for (int relation = 0; relation < NAMES.length; relation++) {
+            for (int i = 0; i < size; i++) {
+                String targets = objects.get(i).getObject().getAttributes().get(NAMES[relation]);
+                if (targets == null)
+                    continue;
+                for (String target : targets.split(",")) {
+                    Integer j = indexes.get(target);
+                    if (j != null && !hasEdge(relation, i, j)) {
+                        adjacency[relation][i][j >>> 6] |= 1L << j;
+                        edges++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param relation an index into NAMES
+     * @param from
+     * @param to
+     * @return Whether object from has the relation to object to
+     */
+    public boolean hasEdge(int relation, int from, int to) {
+        return (adjacency[relation][from][to >>> 6] & 1L << to) != 0;
+    }
+
+    /**
+     * @return The number of objects in the figure
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of relations between the figure's objects
+     */
+    public int getEdgeCount() {
+        return edges;
+    }
+
+    /**
+     * This method counts the relations of the first figure that the mapping
+     * carries over to the second: an edge from i to k is preserved when the
+     * objects i and k are mapped to have the same relation. Each row of the
+     * second figure is pulled back into the first figure's indexes through
+     * the mapping and compared a word at a time.
+     *
+     * @param relations1 the first figure's relations
+     * @param relations2 the second figure's relations
+     * @param mapping the column chosen for each row of the padded score
+     *                matrix; rows and columns past a figure's size are padding
+     * @return The number of preserved relations
+     */
+    public static int preservedEdges(SpatialRelations relations1, SpatialRelations relations2, int[] mapping) {
+        if (relations1.edges == 0 || relations2.edges == 0)
+            return 0;
+
+        int[] inverse = new int[relations2.size];
+        Arrays.fill(inverse, -1);
+        for (int i = 0; i < relations1.size; i++)
+            if (mapping[i] < relations2.size)
+                inverse[mapping[i]] = i;
+
+        int preserved = 0;
+        long[] pulled = new long[relations1.words];
+        for (int relation = 0; relation < NAMES.length; relation++) {
+            for (int i = 0; i < relations1.size; i++) {
+                int j = mapping[i];
+                if (j >= relations2.size)
+                    continue;
+
+                long[] row2 = relations2.adjacency[relation][j];
+                for (int word = 0; word < row2.length; word++) {
+                    for (long bits = row2[word]; bits != 0; bits &= bits - 1) {
+                        int k = inverse[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                        if (k >= 0)
+                            pulled[k >>> 6] |= 1L << k;
+                    }
+                }
+
+                long[] row1 = relations1.adjacency[relation][i];
+                for (int word = 0; word < pulled.length; word++) {
+                    preserved += Long.bitCount(row1[word] & pulled[word]);
+                    pulled[word] = 0;
+                }
+            }
+        }
+        return preserved;
+    }
+}
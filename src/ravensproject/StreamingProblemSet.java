@@ -0,0 +1,154 @@
+package ravensproject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A problem set that is read lazily. Unlike ProblemSet, which parses every
+ * problem when it is created, this only reads the set's ProblemList.txt as it
+ * is iterated and parses each ProblemData.txt when its problem is reached.
+ * Nothing holds on to the problems, so solved problems can be garbage
+ * collected.
+ */
+public class StreamingProblemSet implements Iterable<RavensProblem> {
+
+    private String name;
+
+    public StreamingProblemSet(String name) {
+        this.name = name;
+    }
+
+    /**
+     * This method reads the names of the sets listed in ProblemSetList.txt,
+     * in order, without loading any of them.
+     *
+     * @return The names of the problem sets
+     * @throws IOException if ProblemSetList.txt cannot be read
+     */
+    public static List<String> readSetNames() throws IOException {
+        return readLines(new File("Problems" + File.separator + "ProblemSetList.txt"));
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+            if (!line.trim().isEmpty())
+                lines.add(line);
+        return lines;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * This method returns an iterator that parses each problem of the set
+     * when it is reached. Read errors are thrown as UncheckedIOException; a
+     * problem that cannot be loaded is thrown as a ProblemLoadException and
+     * iteration can continue with the next problem.
+     *
+     * @return The iterator over the set's problems
+     */
+    @Override
+    public Iterator<RavensProblem> iterator() {
+        BufferedReader reader;
+        try {
+            reader = Files.newBufferedReader(new File("Problems" + File.separator + name
+                    + File.separator + "ProblemList.txt").toPath(), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return new ProblemIterator(reader);
+    }
+
+    @Override
+    public Spliterator<RavensProblem> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL);
+    }
+
+    public Stream<RavensProblem> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Iterates over the lines of ProblemList.txt, loading each problem as it
+     * is requested. The list file is closed once it has been read to the end.
+     */
+    private class ProblemIterator implements Iterator<RavensProblem> {
+
+        private BufferedReader reader;
+        private String nextProblemName;
+
+        ProblemIterator(BufferedReader reader) {
+            this.reader = reader;
+            advance();
+        }
+
+        private void advance() {
+            try {
+                nextProblemName = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        nextProblemName = line;
+                        return;
+                    }
+                }
+                reader.close();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextProblemName != null;
+        }
+
+        @Override
+        public RavensProblem next() {
+            if (nextProblemName == null)
+                throw new NoSuchElementException();
+
+            String problemName = nextProblemName;
+            advance();
+            try {
+                return ProblemLoader.loadProblem(name, problemName);
+            } catch (IOException ex) {
+                throw new ProblemLoadException(problemName, ex);
+            }
+        }
+    }
+
+    /**
+     * Thrown by the iterator when a single problem of the set cannot be read
+     * or parsed.
+     */
+    public static class ProblemLoadException extends UncheckedIOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private String problemName;
+
+        public ProblemLoadException(String problemName, IOException cause) {
+            super(problemName + ": " + cause.getMessage(), cause);
+            this.problemName = problemName;
+        }
+
+        public String getProblemName() {
+            return problemName;
+        }
+    }
+}
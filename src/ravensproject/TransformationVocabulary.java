@@ -0,0 +1,121 @@
+package ravensproject;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is a vocabulary of transformation tokens ("grow", "unchanged", "fill",
+ * ...) used to turn token lists into count vectors. Two token lists can then
+ * be compared as multisets in one pass over the vocabulary instead of
+ * searching and removing tokens from copied lists.
+ */
+public class TransformationVocabulary {
+
+    private static final String UNCHANGED = "unchanged";
+
+    private Map<String, Integer> ids;
+
+    public TransformationVocabulary() {
+        ids = new HashMap<>();
+        ids.put(UNCHANGED, 0);
+    }
+
+    public void add(List<String> tokens) {
+        for (String token : tokens)
+            if (!ids.containsKey(token))
+                ids.put(token, ids.size());
+    }
+
+    public void addAll(List<List<String>> tokenLists) {
+        for (List<String> tokens : tokenLists)
+            add(tokens);
+    }
+
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * @param token
+     * @return The id of the token, or -1 if it is not in the vocabulary
+     */
+    public int id(String token) {
+        Integer id = ids.get(token);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * This method counts how often each token of the vocabulary appears in a
+     * token list. Every token must already be in the vocabulary.
+     *
+     * @param tokens
+     * @return The count of each token, indexed by token id
+     */
+    public int[] histogram(List<String> tokens) {
+        int[] counts = new int[ids.size()];
+        for (String token : tokens)
+            counts[ids.get(token)]++;
+        return counts;
+    }
+
+    public int[][] histograms(List<List<String>> tokenLists) {
+        int[][] counts = new int[tokenLists.size()][];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = histogram(tokenLists.get(i));
+        return counts;
+    }
+
+    /**
+     * This method scores candidate tokens against reference tokens: +1 for
+     * every reference token the candidate also has, -1 for every reference
+     * token it lacks, and -1 for every leftover candidate token other than
+     * "unchanged". Tokens are matched as multisets.
+     *
+     * @param reference counts of the reference tokens
+     * @param candidate counts of the candidate tokens
+     * @return The score for the candidate
+     */
+    public static int score(int[] reference, int[] candidate) {
+        int score = 0;
+        int length = Math.max(reference.length, candidate.length);
+        for (int id = 0; id < length; id++) {
+            int referenceCount = id < reference.length ? reference[id] : 0;
+            int candidateCount = id < candidate.length ? candidate[id] : 0;
+            score += score(id, referenceCount, candidateCount);
+        }
+        return score;
+    }
+
+    /**
+     * This method scores a single token of the vocabulary the way
+     * score(int[], int[]) does.
+     *
+     * @param id the token's id
+     * @param referenceCount how often the reference has the token
+     * @param candidateCount how often the candidate has the token
+     * @return The token's share of the score
+     */
+    public static int score(int id, int referenceCount, int candidateCount) {
+        int matched = Math.min(referenceCount, candidateCount);
+        int score = matched - (referenceCount - matched);
+        if (id != 0)
+            score -= candidateCount - matched;
+        return score;
+    }
+
+    /**
+     * This method scores candidate tokens against every reference in turn and
+     * sums the scores.
+     *
+     * @param references counts of each reference's tokens
+     * @param candidate counts of the candidate tokens
+     * @return The summed score for the candidate
+     */
+    public static int score(int[][] references, int[] candidate) {
+        int score = 0;
+        for (int[] reference : references)
+            score += score(reference, candidate);
+        return score;
+    }
+}
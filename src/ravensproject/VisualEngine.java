@@ -0,0 +1,233 @@
+package ravensproject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is a class for scoring answer candidates from the figures' images. Each
+ * figure is binarized once per problem into a FigureBitmap, and the pixel-level
+ * relations along the rows of the matrix (how the amount of ink changes, how
+ * much of a figure's ink its right neighbour keeps and how much of the
+ * neighbour's ink is new, and whether the last figure is the union,
+ * intersection or difference of the first two) are compared with the ones the
+ * candidate would create in the last row. When every complete row turns or
+ * mirrors its second-to-last figure into its last one the same way, candidates
+ * are also scored by how closely they match that rotation or reflection of the
+ * last row's figure.
+ *
+ * Scores come back in the same shape as Agent.determineScores: keyed by
+ * "lastFigure-candidate", higher is better.
+ */
+public class VisualEngine {
+
+    private static final double SCALE = 1000.0;
+    private static final double OPERATION_FIT = 0.9;
+
+    // Share of a figure's dark pixels a transformed figure may differ by and still match
+    private static final double TRANSFORM_TOLERANCE = 0.1;
+
+    private Map<RavensFigure, FigureVariants> variants;
+
+    public VisualEngine() {
+        variants = new IdentityHashMap<>();
+    }
+
+    /**
+     * This method forgets the bitmaps of the previous problem.
+     */
+    public void reset() {
+        variants = new IdentityHashMap<>();
+    }
+
+    /**
+     * @param figure
+     * @return The figure's bitmap, loading it the first time it is needed
+     * @throws IOException if the figure's image cannot be read
+     */
+    public FigureBitmap getBitmap(RavensFigure figure) throws IOException {
+        return getVariants(figure).getBitmap();
+    }
+
+    /**
+     * @param figure
+     * @return The figure's rotated and mirrored bitmaps, shared for the rest of the problem
+     * @throws IOException if the figure's image cannot be read
+     */
+    public FigureVariants getVariants(RavensFigure figure) throws IOException {
+        FigureVariants figureVariants = variants.get(figure);
+        if (figureVariants == null) {
+            figureVariants = new FigureVariants(FigureBitmap.load(figure.getVisual()));
+            variants.put(figure, figureVariants);
+        }
+        return figureVariants;
+    }
+
+    /**
+     * This method scores each candidate by how well the last row, completed
+     * with the candidate, repeats the pixel relations of the complete rows.
+     *
+     * @param ravensFiguresList the matrix, with null in place of the missing figure
+     * @param solutions the answer candidates
+     * @return The map of scores for each candidate
+     * @throws IOException if an image cannot be read
+     */
+    public Map<String, Integer> determineScores(List<List<RavensFigure>> ravensFiguresList,
+                                                List<RavensFigure> solutions) throws IOException {
+
+        int rows = ravensFiguresList.size();
+        List<RavensFigure> lastRow = ravensFiguresList.get(rows - 1);
+        int cols = lastRow.size();
+        RavensFigure lastFigure = lastRow.get(cols - 2);
+
+        // Relations between neighbours in every complete row
+        double[][] darkDeltas = new double[rows - 1][cols - 1];
+        double[][] kept = new double[rows - 1][cols - 1];
+        double[][] covered = new double[rows - 1][cols - 1];
+        for (int r = 0; r < rows - 1; r++) {
+            List<RavensFigure> row = ravensFiguresList.get(r);
+            for (int c = 0; c < cols - 1; c++) {
+                FigureBitmap left = getBitmap(row.get(c));
+                FigureBitmap right = getBitmap(row.get(c + 1));
+                darkDeltas[r][c] = right.darkRatio() - left.darkRatio();
+                kept[r][c] = left.tversky(right, 1, 0);
+                covered[r][c] = left.tversky(right, 0, 1);
+            }
+        }
+
+        // How well the last figure of the complete rows is the OR, AND or XOR of the first two
+        double[] operationFits = new double[3];
+        if (cols >= 3) {
+            for (int r = 0; r < rows - 1; r++) {
+                List<RavensFigure> row = ravensFiguresList.get(r);
+                FigureBitmap first = getBitmap(row.get(0));
+                FigureBitmap second = getBitmap(row.get(1));
+                FigureBitmap last = getBitmap(row.get(cols - 1));
+                for (int op = 0; op < 3; op++)
+                    operationFits[op] += combine(first, second, op).jaccard(last) / (rows - 1);
+            }
+        }
+
+        // Rotation or reflection shared by the last step of every complete row
+        FigureTransform transform = sharedTransform(ravensFiguresList, cols - 2);
+        FigureBitmap expected = null;
+        int transformLimit = 0;
+        if (transform != null) {
+            expected = getVariants(lastRow.get(cols - 2)).get(transform);
+            transformLimit = tolerance(expected, expected);
+        }
+
+        // The last row's OR, AND and XOR only depend on its first two figures
+        FigureBitmap[] lastRowCombined = new FigureBitmap[3];
+        if (cols >= 3) {
+            FigureBitmap first = getBitmap(lastRow.get(0));
+            FigureBitmap second = getBitmap(lastRow.get(1));
+            for (int op = 0; op < 3; op++)
+                if (operationFits[op] >= OPERATION_FIT)
+                    lastRowCombined[op] = combine(first, second, op);
+        }
+
+        Map<String, Integer> scores = new HashMap<>();
+        for (RavensFigure solution : solutions) {
+            FigureBitmap candidate = getBitmap(solution);
+            double score = 0;
+
+            for (int c = 0; c < cols - 1; c++) {
+                FigureBitmap left = getBitmap(lastRow.get(c));
+                FigureBitmap right = c + 1 == cols - 1 ? candidate : getBitmap(lastRow.get(c + 1));
+                double darkDelta = right.darkRatio() - left.darkRatio();
+                // Unlike Jaccard, the two directions tell ink that is removed from ink that is added
+                double keptShare = left.tversky(right, 1, 0);
+                double coveredShare = left.tversky(right, 0, 1);
+                for (int r = 0; r < rows - 1; r++) {
+                    score -= Math.abs(darkDeltas[r][c] - darkDelta);
+                    score -= (Math.abs(kept[r][c] - keptShare) + Math.abs(covered[r][c] - coveredShare)) / 2;
+                }
+            }
+
+            for (FigureBitmap combined : lastRowCombined)
+                if (combined != null)
+                    score += combined.jaccard(candidate);
+
+            if (expected != null && expected.sameSize(candidate)) {
+                int distance = expected.hammingWithin(candidate, transformLimit);
+                if (distance <= transformLimit)
+                    score += 1.0 - (double) distance / (transformLimit + 1);
+            }
+
+            scores.put(lastFigure.getName() + "-" + solution.getName(), (int) Math.round(score * SCALE));
+        }
+
+        return scores;
+    }
+
+    /**
+     * This method finds the rotation or reflection that takes the figure in
+     * the given column to the next one in every complete row.
+     *
+     * @param ravensFiguresList the matrix
+     * @param col the column of the figure being transformed
+     * @return The transform all complete rows share, or null if they share
+     *         none other than the identity
+     * @throws IOException if an image cannot be read
+     */
+    private FigureTransform sharedTransform(List<List<RavensFigure>> ravensFiguresList, int col) throws IOException {
+        FigureTransform shared = null;
+        for (int r = 0; r < ravensFiguresList.size() - 1; r++) {
+            List<RavensFigure> row = ravensFiguresList.get(r);
+            FigureTransform transform = bestTransform(getVariants(row.get(col)), getBitmap(row.get(col + 1)));
+            if (transform == null || (shared != null && transform != shared))
+                return null;
+            shared = transform;
+        }
+        return shared == FigureTransform.IDENTITY ? null : shared;
+    }
+
+    /**
+     * This method finds the transform of one figure that best matches another.
+     * Each comparison stops as soon as it is worse than the best one so far,
+     * and the identity is tried first so symmetric figures are not reported
+     * as rotated.
+     *
+     * @param from
+     * @param to
+     * @return The closest transform within tolerance, or null if there is none
+     */
+    private FigureTransform bestTransform(FigureVariants from, FigureBitmap to) {
+        FigureTransform best = null;
+        int limit = tolerance(from.getBitmap(), to);
+        for (FigureTransform transform : FigureTransform.values()) {
+            FigureBitmap variant = from.get(transform);
+            if (!variant.sameSize(to))
+                continue;
+            int distance = variant.hammingWithin(to, limit);
+            if (distance <= limit) {
+                best = transform;
+                limit = distance - 1;
+                if (limit < 0)
+                    break;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The largest Hamming distance at which two figures still count as the same shape
+     */
+    private int tolerance(FigureBitmap first, FigureBitmap second) {
+        return (int) (TRANSFORM_TOLERANCE * (first.darkCount() + second.darkCount()) / 2);
+    }
+
+    private FigureBitmap combine(FigureBitmap first, FigureBitmap second, int op) {
+        switch (op) {
+            case 0:
+                return first.or(second);
+            case 1:
+                return first.and(second);
+            default:
+                return first.xor(second);
+        }
+    }
+}